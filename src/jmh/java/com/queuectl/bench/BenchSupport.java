@@ -0,0 +1,71 @@
+package com.queuectl.bench;
+
+import com.queuectl.Config;
+import com.queuectl.Job;
+import com.queuectl.JobStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/** Scratch databases and job fixtures shared by the benchmarks. */
+final class BenchSupport {
+    private BenchSupport() {
+    }
+
+    /** Config pointing the database and job logs into {@code dir}. */
+    static Config config(Path dir) {
+        return config(dir, "sqlite");
+    }
+
+    /** Like {@link #config(Path)}, using storage engine {@code engine}. */
+    static Config config(Path dir, String engine) {
+        Properties p = new Properties();
+        p.setProperty("storageEngine", engine);
+        p.setProperty("dbPath", dir.resolve("jobs.db").toString());
+        p.setProperty("walDir", dir.resolve("wal").toString());
+        p.setProperty("logDir", dir.resolve("logs").toString());
+        p.setProperty("dbPoolSize", "8");
+        p.setProperty("idleBackoffMaxMs", "50");
+        return new Config(p);
+    }
+
+    static Path tempDir() throws IOException {
+        return Files.createTempDirectory("queuectl-bench");
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    static List<Job> jobs(String prefix, int n, String command) {
+        List<Job> jobs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            jobs.add(new Job(prefix + "-" + i, command, 0));
+        }
+        return jobs;
+    }
+
+    /** Insert {@code n} pending jobs in batches of 10,000. */
+    static void fill(JobStorage storage, String prefix, long n, String command) {
+        for (long done = 0; done < n; ) {
+            int batch = (int) Math.min(10_000, n - done);
+            List<Job> jobs = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                jobs.add(new Job(prefix + "-" + (done + i), command, 0));
+            }
+            storage.addJobs(jobs);
+            done += batch;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.queuectl.bench;
+
+import com.queuectl.Job;
+import com.queuectl.JobStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claim throughput under contention. Every iteration starts with a fresh backlog of
+ * pending jobs large enough that claimers never see an empty queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClaimBenchmark {
+    @Param({"200000"})
+    public int backlog;
+
+    @Param({"sqlite", "log"})
+    public String engine;
+
+    private Path dir;
+    private JobStorage storage;
+    private int iteration;
+
+    @Setup(Level.Iteration)
+    public void fill() throws Exception {
+        dir = BenchSupport.tempDir();
+        storage = JobStorage.open(BenchSupport.config(dir, engine));
+        BenchSupport.fill(storage, "c" + iteration++, backlog, "true");
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws Exception {
+        storage.close();
+        BenchSupport.delete(dir);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Job claimOne_1thread() {
+        return storage.claimNextPendingJob();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Job claimOne_4threads() {
+        return storage.claimNextPendingJob();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Job claimOne_16threads() {
+        return storage.claimNextPendingJob();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Job claimOne_64threads() {
+        return storage.claimNextPendingJob();
+    }
+
+    @Benchmark
+    @Threads(16)
+    @OperationsPerInvocation(16)
+    public List<Job> claimBatch16_16threads() {
+        return storage.claimBatch(16);
+    }
+
+    @Benchmark
+    @Threads(64)
+    @OperationsPerInvocation(16)
+    public List<Job> claimBatch16_64threads() {
+        return storage.claimBatch(16);
+    }
+}
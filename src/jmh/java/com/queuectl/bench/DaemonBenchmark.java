@@ -0,0 +1,59 @@
+package com.queuectl.bench;
+
+import com.queuectl.Config;
+import com.queuectl.ControlProtocol;
+import com.queuectl.Daemon;
+import com.queuectl.DaemonClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips over the daemon's control socket: a status request and a single-job enqueue,
+ * each waiting for its answer before the next is sent. No workers run, so enqueued jobs
+ * stay pending.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaemonBenchmark {
+    @Param({"sqlite", "log"})
+    public String engine;
+
+    private Path dir;
+    private Daemon daemon;
+    private DaemonClient client;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        dir = BenchSupport.tempDir();
+        Config config = BenchSupport.config(dir, engine);
+        config.set("socketPath", dir.resolve("queuectl.sock").toString());
+        config.set("metricsFile", dir.resolve("metrics.prom").toString());
+        daemon = new Daemon(config);
+        daemon.listen();
+        client = new DaemonClient(dir.resolve("queuectl.sock"));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        client.close();
+        daemon.close();
+        BenchSupport.delete(dir);
+    }
+
+    @Benchmark
+    public ControlProtocol.Message status() throws Exception {
+        return client.call(ControlProtocol.STATUS, "");
+    }
+
+    @Benchmark
+    public ControlProtocol.Message enqueue() throws Exception {
+        return client.call(ControlProtocol.ENQUEUE, "{\"id\":\"d-" + next++ + "\",\"command\":\"true\"}");
+    }
+}
@@ -0,0 +1,74 @@
+package com.queuectl.bench;
+
+import com.queuectl.Config;
+import com.queuectl.JobStorage;
+import com.queuectl.WorkerManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jobs/sec through the whole pipeline: batched enqueue, claim, run a no-op command and
+ * record the result. Each invocation enqueues a batch and waits until all of it completed.
+ * {@code launch} runs the no-op as {@code sh -c true}, as a directly exec'd {@code true}, or
+ * as the in-JVM {@code java:noop} handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class EndToEndBenchmark {
+    private static final int BATCH = 500;
+
+    @Param({"1", "4", "16"})
+    public int workers;
+
+    @Param({"threads", "virtual"})
+    public String mode;
+
+    @Param({"sqlite", "log"})
+    public String engine;
+
+    @Param({"shell", "exec", "java"})
+    public String launch;
+
+    private Path dir;
+    private JobStorage storage;
+    private WorkerManager manager;
+    private long enqueued;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        dir = BenchSupport.tempDir();
+        Config config = BenchSupport.config(dir, engine);
+        config.set("execMode", launch.equals("shell") ? "shell" : "exec");
+        storage = JobStorage.open(config);
+        manager = new WorkerManager(storage, config);
+        if (mode.equals("virtual")) {
+            manager.startAsync(workers);
+        } else {
+            manager.start(workers);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        manager.stop();
+        storage.close();
+        BenchSupport.delete(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void noOpJobs() throws InterruptedException {
+        storage.addJobs(BenchSupport.jobs("e" + round++, BATCH, launch.equals("java") ? "java:noop" : "true"));
+        enqueued += BATCH;
+        while (storage.counters().get("completed") < enqueued) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.queuectl.bench;
+
+import com.queuectl.Job;
+import com.queuectl.JobStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Insert cost of addJob one row at a time versus addJobs in batched transactions. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnqueueBenchmark {
+    private static final int BATCH = 1000;
+
+    @Param({"sqlite", "log"})
+    public String engine;
+
+    private final AtomicLong ids = new AtomicLong();
+    private Path dir;
+    private JobStorage storage;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        dir = BenchSupport.tempDir();
+        storage = JobStorage.open(BenchSupport.config(dir, engine));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        storage.close();
+        BenchSupport.delete(dir);
+    }
+
+    @Benchmark
+    public void single() {
+        storage.addJob(new Job("s-" + ids.incrementAndGet(), "true", 0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean[] batched() {
+        List<Job> jobs = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            jobs.add(new Job("b-" + ids.incrementAndGet(), "true", 0));
+        }
+        return storage.addJobs(jobs);
+    }
+}
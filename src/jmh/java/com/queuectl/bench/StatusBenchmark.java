@@ -0,0 +1,58 @@
+package com.queuectl.bench;
+
+import com.queuectl.Config;
+import com.queuectl.JobStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status counting on large tables: the GROUP BY query against the in-memory counters.
+ * Populated databases are kept under target/bench-status-&lt;rows&gt;.db and reused across
+ * runs, since filling ten million rows takes minutes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public long rows;
+
+    private JobStorage storage;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        Path db = Path.of("target", "bench-status-" + rows + ".db");
+        boolean fresh = !Files.exists(db);
+        Files.createDirectories(db.getParent());
+        Properties p = new Properties();
+        p.setProperty("dbPath", db.toString());
+        p.setProperty("statusReconcileSeconds", "0");
+        storage = JobStorage.open(new Config(p));
+        if (fresh) {
+            BenchSupport.fill(storage, "st", rows, "true");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        storage.close();
+    }
+
+    @Benchmark
+    public Map<String, Long> groupByState() {
+        return storage.countByState();
+    }
+
+    @Benchmark
+    public long counters() {
+        return storage.counters().get("pending");
+    }
+}
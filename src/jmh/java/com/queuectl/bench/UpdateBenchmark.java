@@ -0,0 +1,71 @@
+package com.queuectl.bench;
+
+import com.queuectl.Job;
+import com.queuectl.JobStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** updateJob cost for the processing -> failed -> processing -> completed transitions. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateBenchmark {
+    private static final String[] CYCLE = {"processing", "failed", "processing", "completed"};
+
+    @State(Scope.Benchmark)
+    public static class Db {
+        @Param({"sqlite", "log"})
+        public String engine;
+
+        Path dir;
+        JobStorage storage;
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void open() throws Exception {
+            dir = BenchSupport.tempDir();
+            storage = JobStorage.open(BenchSupport.config(dir, engine));
+            BenchSupport.fill(storage, "u", 100_000, "true");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            storage.close();
+            BenchSupport.delete(dir);
+        }
+    }
+
+    /** Each thread keeps cycling one job of its own, so threads never update the same row. */
+    @State(Scope.Thread)
+    public static class OwnJob {
+        Job job;
+        int step;
+
+        @Setup(Level.Trial)
+        public void pick(Db db) {
+            job = db.storage.getJob("u-" + db.threads.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transition_1thread(Db db, OwnJob own) {
+        transition(db, own);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void transition_8threads(Db db, OwnJob own) {
+        transition(db, own);
+    }
+
+    private static void transition(Db db, OwnJob own) {
+        own.job.state = CYCLE[own.step++ & 3];
+        db.storage.updateJob(own.job);
+    }
+}
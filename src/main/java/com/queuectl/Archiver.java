@@ -0,0 +1,84 @@
+package com.queuectl;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces retention for finished jobs. For each of 'completed' and 'dead', jobs older than
+ * {@code <state>RetentionDays} or beyond the newest {@code <state>RetentionCount} are moved
+ * to the {@link JobArchive} in batches of archiveBatchSize. Each batch is written out before
+ * any lock is taken and then deleted in its own short write transaction, and the freed pages
+ * are then vacuumed. A setting of 0 keeps jobs forever.
+ */
+public class Archiver {
+    private static final String[] FINISHED_STATES = {"completed", "dead"};
+
+    private final JobStorage storage;
+    private final JobArchive archive;
+    private final Config config;
+    private ScheduledExecutorService scheduler;
+
+    public Archiver(JobStorage storage, JobArchive archive, Config config) {
+        this.storage = storage;
+        this.archive = archive;
+        this.config = config;
+    }
+
+    /** Archive every archiveIntervalSeconds in the background, if any retention is set. */
+    public synchronized void start() {
+        int interval = config.getInt("archiveIntervalSeconds", 300);
+        if (scheduler != null || interval <= 0 || !retentionConfigured()) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "queuectl-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /** Archive everything currently past retention; returns the number of jobs moved. */
+    public int runOnce() {
+        int batch = Math.max(1, config.getInt("archiveBatchSize", 5000));
+        int total = 0;
+        try {
+            for (String state : FINISHED_STATES) {
+                long cutoff = cutoff(state);
+                if (cutoff <= 0) continue;
+                int moved;
+                do {
+                    moved = storage.archiveFinished(state, cutoff, batch, archive);
+                    total += moved;
+                } while (moved == batch && !Thread.currentThread().isInterrupted());
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️ Archiving failed, jobs kept in the database: " + e.getMessage());
+        }
+        if (total > 0) storage.compact();
+        return total;
+    }
+
+    /** Jobs in {@code state} that finished before this epoch millis are past retention; 0 for none. */
+    private long cutoff(String state) {
+        int days = config.getInt(state + "RetentionDays", 0);
+        int count = config.getInt(state + "RetentionCount", 0);
+        long cutoff = 0;
+        if (days > 0) cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+        if (count > 0) cutoff = Math.max(cutoff, storage.finishedCutoff(state, count));
+        return cutoff;
+    }
+
+    private boolean retentionConfigured() {
+        for (String state : FINISHED_STATES) {
+            if (config.getInt(state + "RetentionDays", 0) > 0 || config.getInt(state + "RetentionCount", 0) > 0) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,156 @@
+package com.queuectl;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes a thread-mode worker pool between a minimum and a maximum every
+ * autoscaleIntervalMs. The target is the number of workers busy now, plus enough to drain the
+ * backlog within autoscaleDrainSeconds at the average job duration of the last interval. The
+ * backlog is pending jobs plus claimed jobs still in the prefetch buffers.
+ *
+ * Growth is held back while more than autoscaleMissPercent of claims came back empty, because
+ * the backlog is then not claimable (retry backoff, limits, other processes). While system CPU
+ * use over the last interval is above autoscaleMaxLoadPercent, one worker is shed per interval.
+ * Where the JVM cannot report CPU use, the one-minute load average per CPU stands in for it; it
+ * lags by a minute, so a worker is then shed at most once a minute and the pool is only held
+ * in between. Otherwise the pool grows at once. It shrinks only after the target has stayed
+ * below the pool size for autoscaleDownIntervals in a row, then by half the surplus per
+ * interval, so a short lull does not throw away workers the next burst needs. Removed
+ * workers finish their current job.
+ */
+public class Autoscaler {
+    private final WorkerManager manager;
+    private final JobStorage storage;
+    private final int min;
+    private final int max;
+    private final long intervalMs;
+    private final int drainSeconds;
+    private final int missPercent;
+    private final int maxLoadPercent;
+    private final int downIntervals;
+    private final java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private ScheduledExecutorService scheduler;
+
+    // metric totals at the previous tick
+    private long lastClaims;
+    private long lastEmpty;
+    private long lastRuns;
+    private long lastRunMicros;
+    // smoothed seconds per job; assume one until the first job finishes
+    private double jobSeconds = 1;
+    private int intervalsBelow;
+    // whether the last reading was the load average, which only moves once a minute
+    private boolean averaged;
+    private long lastShedAt;
+
+    public Autoscaler(WorkerManager manager, JobStorage storage, Config config, int min, int max) {
+        this.manager = manager;
+        this.storage = storage;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.intervalMs = Math.max(100, config.getInt("autoscaleIntervalMs", 2000));
+        this.drainSeconds = Math.max(1, config.getInt("autoscaleDrainSeconds", 10));
+        this.missPercent = config.getInt("autoscaleMissPercent", 50);
+        this.maxLoadPercent = config.getInt("autoscaleMaxLoadPercent", 90);
+        this.downIntervals = Math.max(1, config.getInt("autoscaleDownIntervals", 3));
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        lastClaims = Metrics.CLAIM.count();
+        lastEmpty = Metrics.EMPTY_CLAIMS.sum();
+        lastRuns = Metrics.EXECUTION.count();
+        lastRunMicros = Metrics.EXECUTION.sum();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "queuectl-autoscaler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    public int min() {
+        return min;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    private void tick() {
+        try {
+            long claims = Metrics.CLAIM.count();
+            long empty = Metrics.EMPTY_CLAIMS.sum();
+            long runs = Metrics.EXECUTION.count();
+            long runMicros = Metrics.EXECUTION.sum();
+            long claimCalls = claims - lastClaims;
+            int missRate = claimCalls == 0 ? 0 : (int) (100 * (empty - lastEmpty) / claimCalls);
+            if (runs > lastRuns) {
+                double recent = (runMicros - lastRunMicros) / 1e6 / (runs - lastRuns);
+                jobSeconds = (jobSeconds + recent) / 2;
+            }
+            lastClaims = claims;
+            lastEmpty = empty;
+            lastRuns = runs;
+            lastRunMicros = runMicros;
+
+            long backlog = storage.counters().get("pending") + manager.bufferedJobs();
+            int busy = manager.busyWorkers();
+            int current = manager.activeWorkers();
+            int target = busy + (int) Math.ceil(backlog * jobSeconds / drainSeconds);
+            double load = cpuLoad();
+            boolean hot = load >= 0 && load * 100 > maxLoadPercent;
+            boolean overloaded = hot && (!averaged || System.currentTimeMillis() - lastShedAt >= 60_000);
+            if (overloaded) {
+                target = Math.min(target, current - 1);
+            } else if (hot || missRate > missPercent) {
+                target = Math.min(target, current);
+            }
+            target = Math.max(min, Math.min(max, target));
+
+            int next = current;
+            if (target > current) {
+                next = target;
+                intervalsBelow = 0;
+            } else if (target < current) {
+                if (overloaded || ++intervalsBelow >= downIntervals) {
+                    next = current - Math.max(1, (current - target) / 2);
+                }
+            } else {
+                intervalsBelow = 0;
+            }
+            if (next == current) return;
+            manager.resize(next);
+            if (overloaded) lastShedAt = System.currentTimeMillis();
+            System.out.printf("%s Workers %d -> %d (backlog %d, busy %d, %.2fs/job, empty claims %d%%, cpu %s)%n",
+                    next > current ? "📈" : "📉", current, next, backlog, busy, jobSeconds, missRate,
+                    load < 0 ? "n/a" : String.format("%.0f%%", load * 100));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * System CPU use since the previous call as a fraction of all CPUs, else the one-minute load
+     * average per CPU, or -1 where the platform reports neither.
+     */
+    private double cpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean cpu) {
+            double load = cpu.getCpuLoad();
+            averaged = load < 0;
+            if (!averaged) return load;
+        }
+        averaged = true;
+        double load = os.getSystemLoadAverage();
+        return load < 0 ? -1 : load / os.getAvailableProcessors();
+    }
+}
@@ -0,0 +1,50 @@
+package com.queuectl;
+
+import java.io.PrintStream;
+
+/** Handlers that ship with queuectl, registered in META-INF/services like any other. */
+public final class BuiltinHandlers {
+    private BuiltinHandlers() {
+    }
+
+    /** {@code java:noop}: succeeds immediately. */
+    public static class Noop implements JobHandler {
+        @Override
+        public String name() {
+            return "noop";
+        }
+
+        @Override
+        public int run(Job job, String args, PrintStream out) {
+            return 0;
+        }
+    }
+
+    /** {@code java:echo <text>}: writes the text to the job's log. */
+    public static class Echo implements JobHandler {
+        @Override
+        public String name() {
+            return "echo";
+        }
+
+        @Override
+        public int run(Job job, String args, PrintStream out) {
+            out.println(args);
+            return 0;
+        }
+    }
+
+    /** {@code java:sleep <millis>}: waits, e.g. to stand in for I/O-bound work. */
+    public static class Sleep implements JobHandler {
+        @Override
+        public String name() {
+            return "sleep";
+        }
+
+        @Override
+        public int run(Job job, String args, PrintStream out) throws InterruptedException {
+            Thread.sleep(args.isEmpty() ? 0 : Long.parseLong(args.trim()));
+            return 0;
+        }
+    }
+}
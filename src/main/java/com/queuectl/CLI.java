@@ -1,20 +1,37 @@
 package com.queuectl;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Arrays;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 public class CLI {
-    private final JobStorage storage = new JobStorage();
-    private final WorkerManager manager = new WorkerManager(storage);
+    // jobs read per query by list and dlq list
+    private static final int LIST_PAGE = 500;
+
     private final Config config = new Config();
-    private final Gson gson = new Gson();
+    private final JobStorage storage = JobStorage.open(config);
+    private final WorkerManager manager = new WorkerManager(storage, config);
+    private final JobArchive archive = new JobArchive(config);
+    private final Archiver archiver = new Archiver(storage, archive, config);
+    private final Scanner sc = new Scanner(System.in);
 
     public void start() {
-        Scanner sc = new Scanner(System.in);
+        Metrics.startDump(Path.of(config.get("metricsFile", "metrics.prom")), config.getInt("metricsDumpSeconds", 15));
+        archiver.start();
         System.out.println("QueueCTL CLI ready. Type 'help' for commands.");
 
         while (true) {
@@ -38,19 +55,23 @@ public class CLI {
                             String mr = sc.nextLine().trim();
                             int maxRetries = mr.isEmpty() ? Integer.parseInt(config.get("max_retries", "3")) : Integer.parseInt(mr);
                             Job job = new Job(id, command, maxRetries);
-                            storage.addJob(job);
-                            System.out.println("✅ Job enqueued: " + id);
+                            printEnqueued(job, storage.addJob(job));
                         } else {
                             handleEnqueue(args);
                         }
                     }
                     case "worker" -> handleWorker(args);
-                    case "status" -> handleStatus();
+                    case "status" -> handleStatus(args);
                     case "list" -> handleList(args);
                     case "dlq" -> handleDlq(args);
+                    case "logs" -> handleLogs(args);
+                    case "metrics" -> System.out.println(Metrics.summary());
+                    case "archive" -> System.out.println("✅ Archived " + archiver.runOnce() + " job(s)");
                     case "config" -> handleConfig(args);
                     case "exit" -> {
                         manager.stop();
+                        archiver.stop();
+                        storage.close();
                         System.exit(0);
                     }
                     case "help" -> printHelp();
@@ -62,16 +83,12 @@ public class CLI {
         }
     }
 
-    private void handleEnqueue(String args) {
-        if (args.startsWith("{")) {
-            JsonObject obj = gson.fromJson(args, JsonObject.class);
-            String id = obj.get("id").getAsString();
-            String command = obj.get("command").getAsString();
-            int maxRetries = obj.has("max_retries") ? obj.get("max_retries").getAsInt()
-                    : obj.has("maxRetries") ? obj.get("maxRetries").getAsInt() : Integer.parseInt(config.get("max_retries", "3"));
-            Job job = new Job(id, command, maxRetries);
-            storage.addJob(job);
-            System.out.println("✅ Job enqueued: " + id);
+    private void handleEnqueue(String args) throws IOException {
+        if (args.startsWith("--file") || args.startsWith("--stdin")) {
+            handleBulkEnqueue(args);
+        } else if (args.startsWith("{")) {
+            Job job = JobLoader.parse(args, Integer.parseInt(config.get("max_retries", "3")));
+            printEnqueued(job, storage.addJob(job));
         } else {
             // simple: enqueue <id> <command...> [maxRetries]
             String[] toks = args.split(" ");
@@ -99,61 +116,336 @@ public class CLI {
             }
 
             Job job = new Job(id, command, maxRetries);
-            storage.addJob(job);
-            System.out.println("✅ Job enqueued: " + id);
+            printEnqueued(job, storage.addJob(job));
         }
     }
 
-    private void handleWorker(String args) {
-        if (args.isEmpty() || args.startsWith("start")) {
-            int count = 1;
-            String[] p = args.split(" ");
-            for (int i = 1; i < p.length; i++) {
-                if (p[i].equals("--count") && i+1 < p.length) {
-                    try { count = Integer.parseInt(p[i+1]); } catch (NumberFormatException ignored) {}
+    private void printEnqueued(Job job, EnqueueResult r) {
+        System.out.println(describe(job, r));
+    }
+
+    /** What the prompt (or the daemon, for its clients) reports about an enqueue. */
+    static String describe(Job job, EnqueueResult r) {
+        return switch (r.outcome) {
+            case ENQUEUED -> {
+                if (job.state.equals("blocked")) {
+                    yield "✅ Job enqueued: " + r.jobId + " (blocked on " + job.remainingDeps + " of " + job.dependsOn.size() + " dependencies)";
+                } else if (job.state.equals("dead")) {
+                    yield "💀 Job " + r.jobId + " enqueued as dead: a job it depends on is dead.";
                 }
+                yield "✅ Job enqueued: " + r.jobId;
             }
-            manager.start(count);
-            System.out.println("Started " + count + " worker(s)");
+            case ATTACHED -> "🔗 Key " + job.idempotencyKey + " is already queued as job " + r.jobId + "; attached to it.";
+            case CACHED -> {
+                String output = r.result.output;
+                yield "♻️ Key " + job.idempotencyKey + " already ran as job " + r.jobId
+                        + " (" + r.result.state + ", exit " + r.result.exitCode + "); cached output:"
+                        + (output.isEmpty() ? "" : "\n" + (output.endsWith("\n") ? output.substring(0, output.length() - 1) : output));
+            }
+            case DUPLICATE_ID -> "⚠️ Job " + r.jobId + " already exists; not enqueued.";
+            case UNKNOWN_DEPENDENCY -> "⚠️ Job " + job.id + " depends on unknown job " + r.jobId + "; not enqueued.";
+            case FAILED -> "❌ Job " + r.jobId + " could not be stored.";
+        };
+    }
+
+    /**
+     * enqueue --file jobs.jsonl | enqueue --stdin
+     * One JSON job per line. --stdin reads following input lines until EOF or a line with a single ".".
+     */
+    private void handleBulkEnqueue(String args) throws IOException {
+        JobLoader loader = new JobLoader(storage, Integer.parseInt(config.get("max_retries", "3")),
+                config.getInt("enqueueBatchSize", 2000), err -> System.out.println("⚠️ Skipped " + err));
+        if (args.startsWith("--file")) {
+            String[] p = args.split(" ", 2);
+            if (p.length < 2) { System.out.println("Usage: enqueue --file <jobs.jsonl>"); return; }
+            try (BufferedReader in = Files.newBufferedReader(Path.of(p[1].trim()), StandardCharsets.UTF_8)) {
+                loader.load(in);
+            }
+        } else {
+            System.out.println("Reading jobs from stdin, end with '.' or EOF");
+            while (sc.hasNextLine()) {
+                String line = sc.nextLine();
+                if (line.trim().equals(".")) break;
+                loader.accept(line);
+            }
+            loader.finish();
+        }
+        System.out.println("✅ Enqueued " + loader.loaded() + " job(s), skipped " + loader.rejected());
+    }
+
+    private void handleWorker(String args) {
+        if (args.isEmpty() || args.startsWith("start")) {
+            startWorkers(manager, args);
         } else if (args.startsWith("stop")) {
             manager.stop();
             System.out.println("Stopped workers");
         } else {
-            System.out.println("worker start --count N | worker stop");
+            System.out.println("worker start [--count N | --auto --min A --max B | --mode virtual --concurrency N] | worker stop");
+        }
+    }
+
+    /** worker start [--count N | --auto --min A --max B | --mode virtual --concurrency N] */
+    static void startWorkers(WorkerManager manager, String args) {
+        int count = 1;
+        String mode = "threads";
+        boolean auto = false;
+        int min = 1;
+        int max = Runtime.getRuntime().availableProcessors() * 4;
+        String[] p = args.split(" ");
+        for (int i = 1; i < p.length; i++) {
+            if ((p[i].equals("--count") || p[i].equals("--concurrency")) && i+1 < p.length) {
+                try { count = Integer.parseInt(p[i+1]); } catch (NumberFormatException ignored) {}
+            } else if (p[i].equals("--mode") && i+1 < p.length) {
+                mode = p[i+1];
+            } else if (p[i].equals("--auto")) {
+                auto = true;
+            } else if (p[i].equals("--min") && i+1 < p.length) {
+                try { min = Integer.parseInt(p[i+1]); auto = true; } catch (NumberFormatException ignored) {}
+            } else if (p[i].equals("--max") && i+1 < p.length) {
+                try { max = Integer.parseInt(p[i+1]); auto = true; } catch (NumberFormatException ignored) {}
+            }
+        }
+        if (auto && !mode.equals("virtual")) {
+            manager.startAuto(min, max);
+            Autoscaler scaler = manager.autoscaler();
+            if (scaler == null) {
+                System.out.println("⚠️ Async workers are running; stop them before autoscaling.");
+            } else {
+                System.out.println("Started " + manager.activeWorkers() + " worker(s), autoscaling between "
+                        + scaler.min() + " and " + scaler.max());
+            }
+        } else if (mode.equals("virtual")) {
+            if (auto) System.out.println("⚠️ --auto applies to thread workers; using a fixed concurrency.");
+            manager.startAsync(count);
+            System.out.println("Started async worker pool with concurrency " + count);
+        } else {
+            manager.start(count);
+            System.out.println("Started " + count + " worker(s)");
         }
     }
 
-    private void handleStatus() {
-        int pending = storage.listJobsByState("pending").size();
-        int processing = storage.listJobsByState("processing").size();
-        int completed = storage.listJobsByState("completed").size();
-        int failed = storage.listJobsByState("failed").size();
-        int dead = storage.listJobsByState("dead").size();
-        System.out.println("Jobs: pending="+pending+" processing="+processing+" completed="+completed+" failed="+failed+" dead="+dead);
-        System.out.println("Active workers: " + manager.activeWorkers());
+    private void handleStatus(String args) {
+        System.out.println(statusText(storage, manager, args.equals("--exact")));
     }
 
-    private void handleList(String args) {
-        String state = "pending";
-        if (args.startsWith("--state") || args.startsWith("-s")) {
-            String[] p = args.split(" ", 2);
-            if (p.length==2) state = p[1].trim();
+    /** Per-state job counts (exact ones from storage, or the in-memory counters) and the worker pool. */
+    static String statusText(JobStorage storage, WorkerManager manager, boolean exact) {
+        long pending, blocked, processing, completed, failed, dead;
+        if (exact) {
+            Map<String, Long> counts = storage.countByState();
+            pending = counts.getOrDefault("pending", 0L);
+            blocked = counts.getOrDefault("blocked", 0L);
+            processing = counts.getOrDefault("processing", 0L);
+            completed = counts.getOrDefault("completed", 0L);
+            failed = counts.getOrDefault("failed", 0L);
+            dead = counts.getOrDefault("dead", 0L);
+        } else {
+            StateCounters counts = storage.counters();
+            pending = counts.get("pending");
+            blocked = counts.get("blocked");
+            processing = counts.get("processing");
+            completed = counts.get("completed");
+            failed = counts.get("failed");
+            dead = counts.get("dead");
         }
-        List<Job> jobs = storage.listJobsByState(state);
-        jobs.forEach(System.out::println);
+        Autoscaler scaler = manager.autoscaler();
+        return "Jobs: pending="+pending+" blocked="+blocked+" processing="+processing+" completed="+completed+" failed="+failed+" dead="+dead
+                + "\nActive workers: " + manager.activeWorkers() + " (" + manager.busyWorkers() + " busy"
+                + (scaler != null ? ", autoscaling " + scaler.min() + "-" + scaler.max() : "") + ")";
+    }
+
+    /**
+     * list [--state S] [--queue Q] [--limit N] [--after <id>] [--since 15m|2h|1d|2026-01-31T10:00] [--prefix <command prefix>]
+     * list --archived [--state S] [--queue Q] [--limit N] [--since ...] [--prefix ...]
+     */
+    private void handleList(String args) throws IOException {
+        list(storage, archive, args, System.out::println);
+    }
+
+    /** Run a list command, handing each output line to {@code out}. */
+    static void list(JobStorage storage, JobArchive archive, String args, Consumer<String> out) throws IOException {
+        Map<String, String> opts = parseOptions(args);
+        boolean archived = opts.containsKey("--archived");
+        // archived jobs are all finished, so there is no useful default state to narrow to
+        String state = opts.getOrDefault("--state", opts.getOrDefault("-s", archived ? null : "pending"));
+        JobFilter filter = new JobFilter(state);
+        filter.queue = opts.get("--queue");
+        filter.afterId = opts.get("--after");
+        filter.commandPrefix = opts.get("--prefix");
+        if (opts.containsKey("--since")) filter.since = parseSince(opts.get("--since"));
+        if (opts.containsKey("--limit")) filter.limit = Integer.parseInt(opts.get("--limit"));
+        if (archived) {
+            archive.forEach(filter, job -> out.accept(job.toString()));
+            return;
+        }
+
+        int[] shown = {0};
+        String last = forEachPage(storage, filter, job -> {
+            out.accept(job.toString());
+            shown[0]++;
+        });
+        if (filter.limit > 0 && shown[0] == filter.limit) {
+            out.accept("-- more: " + continuation("list", args, last));
+        }
+    }
+
+    /**
+     * Hand the jobs matching {@code filter} to {@code out} a page of LIST_PAGE at a time. Each
+     * page is read and its connection released before {@code out} sees it, because {@code out}
+     * may block on a slow client. Returns the id of the last job, or null if none matched.
+     */
+    private static String forEachPage(JobStorage storage, JobFilter filter, Consumer<Job> out) {
+        int limit = filter.limit;
+        int shown = 0;
+        String last = null;
+        List<Job> page = new ArrayList<>();
+        while (true) {
+            page.clear();
+            filter.limit = limit > 0 ? Math.min(LIST_PAGE, limit - shown) : LIST_PAGE;
+            storage.forEachJob(filter, page::add);
+            page.forEach(out);
+            if (page.isEmpty()) break;
+            shown += page.size();
+            last = page.get(page.size() - 1).id;
+            filter.afterId = last;
+            if (page.size() < filter.limit || shown == limit) break;
+        }
+        filter.limit = limit;
+        return last;
+    }
+
+    /** The command for the page after {@code last}: the same arguments with the cursor moved. */
+    private static String continuation(String command, String args, String last) {
+        String again = args.replaceAll("\\s*--after \\S+", "").trim();
+        return command + " " + (again.isEmpty() ? "" : again + " ") + "--after " + last;
+    }
+
+    /** Split "--flag value words --other v" into flag -> value; a value runs until the next flag. */
+    private static Map<String, String> parseOptions(String args) {
+        Map<String, String> opts = new HashMap<>();
+        String key = null;
+        StringBuilder value = new StringBuilder();
+        for (String tok : args.trim().split("\\s+")) {
+            if (tok.startsWith("-") && tok.length() > 1 && !Character.isDigit(tok.charAt(1))) {
+                if (key != null) opts.put(key, value.toString());
+                key = tok;
+                value.setLength(0);
+            } else if (key != null) {
+                if (value.length() > 0) value.append(' ');
+                value.append(tok);
+            }
+        }
+        if (key != null) opts.put(key, value.toString());
+        return opts;
+    }
+
+    /** Relative ("30s", "15m", "2h", "7d") or ISO local date/date-time, as epoch millis. */
+    private static long parseSince(String since) {
+        if (since.matches("\\d+[smhd]")) {
+            long n = Long.parseLong(since.substring(0, since.length() - 1));
+            Duration d = switch (since.charAt(since.length() - 1)) {
+                case 's' -> Duration.ofSeconds(n);
+                case 'm' -> Duration.ofMinutes(n);
+                case 'h' -> Duration.ofHours(n);
+                default -> Duration.ofDays(n);
+            };
+            return System.currentTimeMillis() - d.toMillis();
+        }
+        LocalDateTime time = since.contains("T") ? LocalDateTime.parse(since) : LocalDate.parse(since).atStartOfDay();
+        return JobStorage.toEpochMillis(time);
+    }
+
+    /** logs <id> [--follow] */
+    private void handleLogs(String args) throws IOException, InterruptedException {
+        String[] p = args.split(" ");
+        if (p[0].isEmpty()) { System.out.println("Usage: logs <job-id> [--follow]"); return; }
+        String id = p[0];
+        JobLogs logs = manager.logs();
+        WritableByteChannel out = Channels.newChannel(System.out);
+        if (p.length > 1 && p[1].equals("--follow")) {
+            logs.follow(id, out, () -> {
+                Job job = storage.getJob(id);
+                return job == null || job.state.equals("completed") || job.state.equals("dead");
+            });
+        } else if (Files.exists(logs.logFile(id))) {
+            logs.copyTo(id, out);
+        } else {
+            System.out.println("No logs for job " + id);
+        }
+        System.out.flush();
     }
 
     private void handleDlq(String args) {
-        if (args.startsWith("list") || args.isEmpty()) {
-            storage.listDLQ().forEach(System.out::println);
-        } else if (args.startsWith("retry")) {
-            String[] p = args.split(" ");
-            if (p.length < 2) { System.out.println("Usage: dlq retry <job-id>"); return; }
-            boolean ok = storage.retryDLQJob(p[1]);
-            System.out.println(ok ? "Retried job " + p[1] : "Failed to retry job " + p[1]);
+        dlq(storage, config, args, System.out::println);
+    }
+
+    /**
+     * dlq list [--reason R] [--since D] [--match T] [--limit N] [--after id] [--tail]
+     * dlq retry <id> | dlq retry --all | dlq retry [--reason R] [--since D] [--match T] [--rate N/s]
+     * A reason is exit:&lt;code&gt;, timeout, io or dependency, and "exit" matches every exit code.
+     * --since is when the job died, --match a substring of its command or failure output.
+     * Returns false if nothing was retried by id or the arguments were not understood.
+     */
+    static boolean dlq(JobStorage storage, Config config, String args, Consumer<String> out) {
+        String[] p = args.split(" ", 2);
+        String rest = p.length > 1 ? p[1].trim() : "";
+        if (p[0].equals("list") || args.isEmpty()) {
+            Map<String, String> opts = parseOptions(rest);
+            JobFilter filter = dlqFilter(opts);
+            filter.afterId = opts.get("--after");
+            if (opts.containsKey("--limit")) filter.limit = Integer.parseInt(opts.get("--limit"));
+            boolean tail = opts.containsKey("--tail");
+            int[] shown = {0};
+            String last = forEachPage(storage, filter, job -> {
+                out.accept(describeDead(job, tail));
+                shown[0]++;
+            });
+            if (filter.limit > 0 && shown[0] == filter.limit) {
+                out.accept("-- more: " + continuation("dlq list", rest, last));
+            }
+            return true;
+        } else if (p[0].equals("retry") && !rest.isEmpty() && !rest.startsWith("--")) {
+            boolean ok = storage.retryDLQJob(rest);
+            out.accept(ok ? "Retried job " + rest : "Failed to retry job " + rest);
+            return ok;
+        } else if (p[0].equals("retry") && !rest.isEmpty()) {
+            Map<String, String> opts = parseOptions(rest);
+            JobFilter filter = dlqFilter(opts);
+            if (!opts.containsKey("--all") && filter.failureReason == null && filter.finishedSince == 0 && filter.match == null) {
+                out.accept("Usage: dlq retry --all | dlq retry [--reason R] [--since D] [--match T] [--rate N/s]");
+                return false;
+            }
+            DlqRequeuer requeuer = new DlqRequeuer(storage, config);
+            double rate = opts.containsKey("--rate") ? DlqRequeuer.parseRate(opts.get("--rate")) : requeuer.defaultRate();
+            long requeued = requeuer.requeue(filter, rate, out);
+            out.accept("✅ Requeued " + requeued + " job(s) from the DLQ");
+            return true;
+        }
+        out.accept("dlq list [--reason R] [--since D] [--match T] [--limit N] [--tail] | dlq retry <id> | dlq retry --all | dlq retry [--reason R] [--since D] [--match T] [--rate N/s]");
+        return false;
+    }
+
+    private static JobFilter dlqFilter(Map<String, String> opts) {
+        JobFilter filter = new JobFilter("dead");
+        filter.failureReason = opts.get("--reason");
+        if (opts.containsKey("--since")) filter.finishedSince = parseSince(opts.get("--since"));
+        filter.match = opts.get("--match");
+        return filter;
+    }
+
+    /** A dead job with its failure reason and the last line of output, or all of the captured output. */
+    private static String describeDead(Job job, boolean tail) {
+        String detail = job.failureDetail == null ? "" : job.failureDetail.strip();
+        StringBuilder line = new StringBuilder(job.toString());
+        if (job.failureReason != null) line.append(' ').append(job.failureReason);
+        if (detail.isEmpty()) return line.toString();
+        if (tail) {
+            line.append('\n').append(detail.indent(4).stripTrailing());
         } else {
-            System.out.println("dlq list | dlq retry <id>");
+            String lastLine = detail.substring(detail.lastIndexOf('\n') + 1);
+            line.append(": ").append(lastLine.length() > 120 ? lastLine.substring(0, 117) + "..." : lastLine);
         }
+        return line.toString();
     }
 
     private void handleConfig(String args) {
@@ -168,6 +460,6 @@ public class CLI {
     }
 
     private void printHelp() {
-        System.out.println("Commands:\n  enqueue <json|id command>  - Add new job\n  worker start --count N | worker stop\n  status\n  list --state <state>\n  dlq list | dlq retry <id>\n  config set <key> <value>\n  help\n  exit");
+        System.out.println("Commands:\n  enqueue <json|id command>  - Add new job (command java:<handler> runs in-process)\n  enqueue --file <jobs.jsonl> | enqueue --stdin\n  worker start [--count N | --auto --min A --max B | --mode virtual --concurrency N] | worker stop\n  status [--exact]\n  list [--state S] [--queue Q] [--limit N] [--after <id>] [--since 15m|<date>] [--prefix <cmd>] [--archived]\n  archive                    - Archive finished jobs past retention now\n  logs <id> [--follow]\n  metrics\n  dlq list [--reason R] [--since D] [--match T] [--limit N] [--tail]\n  dlq retry <id> | dlq retry --all | dlq retry [--reason R] [--since D] [--match T] [--rate N/s]\n  config set <key> <value>\n  help\n  exit");
     }
 }
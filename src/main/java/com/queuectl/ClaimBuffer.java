@@ -0,0 +1,83 @@
+package com.queuectl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory prefetch buffer in front of {@link JobStorage#claimBatch(String, int)}. Worker threads
+ * take jobs from the buffer; the thread that sees it drop to the low-water mark tops it up
+ * with one batched claim, so most hand-offs never touch the database.
+ */
+public class ClaimBuffer {
+    private final JobStorage storage;
+    private final String queue;
+    private final int batchSize;
+    private final int lowWater;
+    private final ConcurrentLinkedQueue<Job> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    public ClaimBuffer(JobStorage storage, int batchSize, int lowWater) {
+        this(storage, null, batchSize, lowWater);
+    }
+
+    /** A buffer that only claims from {@code queue}; null claims from any queue. */
+    public ClaimBuffer(JobStorage storage, String queue, int batchSize, int lowWater) {
+        this.storage = storage;
+        this.queue = queue;
+        this.batchSize = Math.max(1, batchSize);
+        this.lowWater = Math.max(0, Math.min(lowWater, this.batchSize - 1));
+    }
+
+    /** Next claimed job, or null if the queue is empty. */
+    public Job next() {
+        Job job = poll();
+        if (size.get() <= lowWater) {
+            // a thread with work in hand refills opportunistically; an empty-handed one waits its turn
+            refill(job == null);
+        }
+        return job != null ? job : poll();
+    }
+
+    /** Jobs claimed but not yet handed to a worker. */
+    public int size() {
+        return size.get();
+    }
+
+    /** Give every buffered job back to the queue. */
+    public void drain() {
+        List<Job> jobs = new ArrayList<>();
+        Job job;
+        while ((job = poll()) != null) {
+            jobs.add(job);
+        }
+        storage.releaseJobs(jobs);
+    }
+
+    private Job poll() {
+        Job job = buffer.poll();
+        if (job != null) size.decrementAndGet();
+        return job;
+    }
+
+    private void refill(boolean wait) {
+        if (wait) {
+            refillLock.lock();
+        } else if (!refillLock.tryLock()) {
+            return;
+        }
+        try {
+            int want = batchSize - size.get();
+            if (want <= lowWater) return; // another thread refilled while we waited
+            for (Job job : storage.claimBatch(queue, want)) {
+                buffer.add(job);
+                size.incrementAndGet();
+            }
+        } finally {
+            refillLock.unlock();
+        }
+    }
+}
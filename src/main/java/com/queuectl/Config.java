@@ -8,9 +8,10 @@ import java.util.Properties;
 
 public class Config {
     private final Properties props = new Properties();
-    private final Path path = Path.of("config.properties");
+    private final Path path;
 
     public Config() {
+        path = Path.of("config.properties");
         try (FileInputStream in = new FileInputStream(path.toFile())) {
             props.load(in);
         } catch (IOException ignored) {
@@ -18,12 +19,27 @@ public class Config {
         }
     }
 
+    /** In-memory config that is never read from or saved to disk, e.g. for benchmarks. */
+    public Config(Properties values) {
+        path = null;
+        props.putAll(values);
+    }
+
     public String get(String key, String def) {
         return props.getProperty(key, def);
     }
 
+    public int getInt(String key, int def) {
+        try {
+            return Integer.parseInt(props.getProperty(key, String.valueOf(def)).trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
     public void set(String key, String value) {
         props.setProperty(key, value);
+        if (path == null) return;
         try (FileOutputStream out = new FileOutputStream(path.toFile())) {
             props.store(out, "queuectl config");
         } catch (IOException e) {
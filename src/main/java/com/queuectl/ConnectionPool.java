@@ -0,0 +1,81 @@
+package com.queuectl;
+
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Small fixed-size pool of long-lived SQLite connections. Connections are opened
+ * once in WAL mode so readers (status, list) never block the workers' writes.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final BlockingQueue<PooledConnection> idle;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(Config config) throws SQLException {
+        int size = Math.max(1, config.getInt("dbPoolSize", 4));
+        String url = "jdbc:sqlite:" + config.get("dbPath", "jobs.db");
+
+        SQLiteConfig sqlite = new SQLiteConfig();
+        sqlite.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        sqlite.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(config.get("dbSynchronous", "NORMAL").toUpperCase()));
+        sqlite.setBusyTimeout(config.getInt("dbBusyTimeoutMs", 5000));
+        // negative cache_size is interpreted by SQLite as KiB rather than pages
+        sqlite.setCacheSize(-config.getInt("dbCacheSizeKb", 8192));
+        // take the write lock up front so two claimers never deadlock upgrading a read lock
+        sqlite.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+        idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection conn = DriverManager.getConnection(url, sqlite.toProperties());
+                idle.add(new PooledConnection(this, conn));
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Borrow a connection, blocking until one is free. Close the result to give it back.
+     * Waiting is not interruptible so a stopping worker can still record its job's state.
+     */
+    public PooledConnection acquire() throws SQLException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                if (closed) throw new SQLException("Connection pool is closed");
+                try {
+                    return idle.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    void release(PooledConnection conn) {
+        if (closed) {
+            conn.closePhysical();
+        } else {
+            idle.offer(conn);
+        }
+    }
+
+    /** Closes idle connections now; borrowed ones are closed as they are released. */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        PooledConnection pc;
+        while ((pc = idle.poll()) != null) {
+            pc.closePhysical();
+        }
+    }
+}
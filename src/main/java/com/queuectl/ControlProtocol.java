@@ -0,0 +1,100 @@
+package com.queuectl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the daemon's control socket. Every message is a frame: a 4-byte big-endian
+ * length followed by that many bytes, the first of which is a code and the rest UTF-8 text.
+ * In a request the code is the operation and the text its arguments, as typed at the prompt.
+ * In a response it is a status. LIST streams its lines in MORE frames and ends with OK.
+ *
+ * Responses come back in request order, so a client may write any number of requests before
+ * reading the first answer. It must keep reading while it writes, or both ends can stall on
+ * full socket buffers.
+ */
+public final class ControlProtocol {
+    public static final byte ENQUEUE = 1;
+    public static final byte STATUS = 2;
+    public static final byte LIST = 3;
+    public static final byte DLQ_LIST = 4;
+    public static final byte DLQ_RETRY = 5;
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+    public static final byte MORE = 2;
+
+    private static final int MAX_FRAME = 16 << 20;
+
+    private ControlProtocol() {
+    }
+
+    public record Message(byte code, String text) {
+    }
+
+    public static void write(DataOutputStream out, byte code, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(1 + bytes.length);
+        out.writeByte(code);
+        out.write(bytes);
+    }
+
+    /** The next message, or null if the peer closed the connection between messages. */
+    public static Message read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 1 || length > MAX_FRAME) throw new IOException("Bad frame length " + length);
+        byte code = in.readByte();
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new Message(code, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A stream reading straight from {@code ch}. Unlike {@code Channels.newInputStream}, it
+     * does not hold the channel's blocking lock, so another thread can write while a read blocks.
+     */
+    static InputStream input(SocketChannel ch) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : ch.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    /** The writing counterpart of {@link #input(SocketChannel)}. */
+    static OutputStream output(SocketChannel ch) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,267 @@
+package com.queuectl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code queuectl daemon}: owns the storage, workers and archiver for as long as it runs and
+ * serves {@link ControlProtocol} requests on the Unix domain socket at socketPath, so scripts
+ * submit work through {@link DaemonClient} without a REPL or a JVM and database open per job.
+ *
+ * Each connection gets a thread. Requests on a connection are answered in order, and
+ * responses are flushed only once no further request is already buffered, so a pipelined
+ * stream costs a write per buffer rather than per request. Enqueues that arrive back to back
+ * are inserted in one transaction of up to enqueueBatchSize jobs.
+ */
+public class Daemon implements AutoCloseable {
+    private final Config config;
+    private final JobStorage storage;
+    private final WorkerManager manager;
+    private final JobArchive archive;
+    private final Archiver archiver;
+    private final Path socketPath;
+    private final int batchSize;
+    private final int defaultMaxRetries;
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private final ExecutorService connections;
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private ServerSocketChannel server;
+
+    public Daemon(Config config) {
+        this.config = config;
+        this.storage = JobStorage.open(config);
+        this.manager = new WorkerManager(storage, config);
+        this.archive = new JobArchive(config);
+        this.archiver = new Archiver(storage, archive, config);
+        this.socketPath = Path.of(config.get("socketPath", "queuectl.sock"));
+        this.batchSize = Math.max(1, config.getInt("enqueueBatchSize", 2000));
+        this.defaultMaxRetries = Integer.parseInt(config.get("max_retries", "3"));
+        AtomicInteger threads = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "queuectl-conn-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Entry point for {@code queuectl daemon [worker start options]}; runs until the JVM is stopped. */
+    public static void run(String[] args) throws IOException, InterruptedException {
+        Daemon daemon = new Daemon(new Config());
+        try {
+            daemon.listen();
+        } catch (IllegalStateException e) {
+            System.out.println("❌ " + e.getMessage());
+            daemon.storage.close();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "queuectl-daemon-shutdown"));
+        CLI.startWorkers(daemon.manager, "start " + String.join(" ", List.of(args).subList(1, args.length)));
+        System.out.println("queuectl daemon listening on " + daemon.socketPath.toAbsolutePath());
+        daemon.closed.await();
+    }
+
+    /** Bind the socket and start accepting connections on a background thread. */
+    public synchronized void listen() throws IOException {
+        if (server != null) return;
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socketPath);
+        if (Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)) {
+            if (!Files.readAttributes(socketPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+                throw new IllegalStateException(socketPath + " exists and is not a socket; refusing to replace it");
+            }
+            try {
+                SocketChannel.open(address).close();
+                throw new IllegalStateException("A daemon is already listening on " + socketPath);
+            } catch (IOException e) {
+                // a socket nobody answers on is left over from a daemon that did not shut down
+                Files.delete(socketPath);
+            }
+        }
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(address);
+        try {
+            // the socket accepts arbitrary commands, so only the owner may connect
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system
+        }
+        Metrics.startDump(Path.of(config.get("metricsFile", "metrics.prom")), config.getInt("metricsDumpSeconds", 15));
+        archiver.start();
+        ServerSocketChannel listening = server;
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    SocketChannel ch = listening.accept();
+                    clients.add(ch);
+                    connections.execute(() -> serve(ch));
+                } catch (ClosedChannelException e) {
+                    return;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "queuectl-daemon-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public WorkerManager manager() {
+        return manager;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server == null) return;
+        try {
+            server.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        server = null;
+        for (SocketChannel ch : clients) {
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+        connections.shutdown();
+        manager.stop();
+        archiver.stop();
+        storage.close();
+        closed.countDown();
+    }
+
+    private void serve(SocketChannel ch) {
+        try (ch) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(ControlProtocol.input(ch), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(ControlProtocol.output(ch), 1 << 16));
+            ControlProtocol.Message request = ControlProtocol.read(in);
+            while (request != null) {
+                ControlProtocol.Message next = null;
+                if (request.code() == ControlProtocol.ENQUEUE) {
+                    List<String> batch = new ArrayList<>();
+                    batch.add(request.text());
+                    // enqueues already waiting in the buffer join this one's transaction
+                    while (batch.size() < batchSize && in.available() > 0) {
+                        ControlProtocol.Message m = ControlProtocol.read(in);
+                        if (m == null) break;
+                        if (m.code() != ControlProtocol.ENQUEUE) {
+                            next = m;
+                            break;
+                        }
+                        batch.add(m.text());
+                    }
+                    enqueue(batch, out);
+                } else {
+                    handle(request, out);
+                }
+                if (in.available() == 0) out.flush();
+                request = next != null ? next : ControlProtocol.read(in);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // the client went away; nothing to answer
+        } finally {
+            clients.remove(ch);
+        }
+    }
+
+    private void enqueue(List<String> bodies, DataOutputStream out) throws IOException {
+        Job[] jobs = new Job[bodies.size()];
+        String[] errors = new String[bodies.size()];
+        List<Job> valid = new ArrayList<>(bodies.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            try {
+                jobs[i] = JobLoader.parse(bodies.get(i), defaultMaxRetries);
+                valid.add(jobs[i]);
+            } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+                errors[i] = "INVALID\n⚠️ Invalid job: " + (e.getMessage() == null ? "malformed JSON" : e.getMessage());
+            }
+        }
+        boolean[] inserted = valid.size() > 1 ? storage.addJobs(valid) : new boolean[valid.size()];
+        int k = 0;
+        for (int i = 0; i < jobs.length; i++) {
+            if (errors[i] != null) {
+                ControlProtocol.write(out, ControlProtocol.ERROR, errors[i]);
+                continue;
+            }
+            Job job = jobs[i];
+            // a job the batch skipped is retried alone to learn why: duplicate, attached, cached...
+            EnqueueResult r = inserted[k++] ? EnqueueResult.enqueued(job.id) : storage.addJob(job);
+            boolean ok = r.outcome == EnqueueResult.Outcome.ENQUEUED || r.outcome == EnqueueResult.Outcome.ATTACHED
+                    || r.outcome == EnqueueResult.Outcome.CACHED;
+            ControlProtocol.write(out, ok ? ControlProtocol.OK : ControlProtocol.ERROR,
+                    r.outcome + " " + r.jobId + "\n" + CLI.describe(job, r));
+        }
+    }
+
+    private void handle(ControlProtocol.Message request, DataOutputStream out) throws IOException {
+        try {
+            switch (request.code()) {
+                case ControlProtocol.STATUS -> ControlProtocol.write(out, ControlProtocol.OK,
+                        CLI.statusText(storage, manager, request.text().trim().equals("--exact")));
+                case ControlProtocol.LIST -> {
+                    StringBuilder chunk = new StringBuilder();
+                    CLI.list(storage, archive, request.text(), line -> {
+                        chunk.append(line).append('\n');
+                        if (chunk.length() >= 32 * 1024) {
+                            more(out, chunk);
+                        }
+                    });
+                    ControlProtocol.write(out, ControlProtocol.OK, chunk.toString());
+                }
+                case ControlProtocol.DLQ_LIST, ControlProtocol.DLQ_RETRY -> {
+                    boolean retry = request.code() == ControlProtocol.DLQ_RETRY;
+                    StringBuilder chunk = new StringBuilder();
+                    boolean ok = CLI.dlq(storage, config, (retry ? "retry " : "list ") + request.text(), line -> {
+                        chunk.append(line).append('\n');
+                        // a bulk retry reports progress while it runs
+                        if (retry || chunk.length() >= 32 * 1024) {
+                            more(out, chunk);
+                        }
+                    });
+                    ControlProtocol.write(out, ok ? ControlProtocol.OK : ControlProtocol.ERROR, chunk.toString());
+                }
+                default -> ControlProtocol.write(out, ControlProtocol.ERROR, "Unknown operation " + request.code());
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            ControlProtocol.write(out, ControlProtocol.ERROR, "Error: " + e.getMessage());
+        }
+    }
+
+    /** Send {@code chunk} as a MORE frame and clear it; an I/O failure ends the listing. */
+    private static void more(DataOutputStream out, StringBuilder chunk) {
+        try {
+            ControlProtocol.write(out, ControlProtocol.MORE, chunk.toString());
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunk.setLength(0);
+    }
+}
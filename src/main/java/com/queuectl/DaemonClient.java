@@ -0,0 +1,176 @@
+package com.queuectl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The command-line client of a running {@link Daemon}: {@code queuectl <command> [args]} sends
+ * one request over the control socket, prints the answer and exits with 0 on success, 1 if the
+ * daemon refused the request and 2 if it could not be reached or the command is unknown.
+ *
+ * {@code enqueue --file} and {@code enqueue --stdin} stream every line over one connection: a
+ * writer thread sends the jobs while this thread reads the answers, so the daemon batches
+ * them into transactions and no job waits for the previous one's round trip.
+ */
+public class DaemonClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public DaemonClient(Path socketPath) throws IOException {
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        in = new DataInputStream(new BufferedInputStream(ControlProtocol.input(channel), 1 << 16));
+        out = new DataOutputStream(new BufferedOutputStream(ControlProtocol.output(channel), 1 << 16));
+    }
+
+    /** Send one request and wait for its answer; MORE frames are handed to {@code more}. */
+    public ControlProtocol.Message call(byte op, String args, Consumer<String> more) throws IOException {
+        ControlProtocol.write(out, op, args);
+        out.flush();
+        while (true) {
+            ControlProtocol.Message m = ControlProtocol.read(in);
+            if (m == null) throw new IOException("Daemon closed the connection");
+            if (m.code() != ControlProtocol.MORE) return m;
+            more.accept(m.text());
+        }
+    }
+
+    public ControlProtocol.Message call(byte op, String args) throws IOException {
+        return call(op, args, text -> { });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static int run(String[] args) {
+        Path socketPath = Path.of(new Config().get("socketPath", "queuectl.sock"));
+        String cmd = args[0];
+        String rest = String.join(" ", Arrays.asList(args).subList(1, args.length)).trim();
+        byte op;
+        switch (cmd) {
+            case "enqueue" -> op = ControlProtocol.ENQUEUE;
+            case "status" -> op = ControlProtocol.STATUS;
+            case "list" -> op = ControlProtocol.LIST;
+            case "dlq" -> {
+                String[] p = rest.split(" ", 2);
+                if (p[0].equals("list")) {
+                    op = ControlProtocol.DLQ_LIST;
+                } else if (p[0].equals("retry") && p.length > 1) {
+                    op = ControlProtocol.DLQ_RETRY;
+                } else {
+                    System.out.println("Usage: queuectl dlq list [options] | queuectl dlq retry <jobId> | queuectl dlq retry --all | queuectl dlq retry [options]");
+                    return 2;
+                }
+                rest = p.length > 1 ? p[1].trim() : "";
+            }
+            default -> {
+                System.out.println("Usage: queuectl [daemon [worker start options] | enqueue <json> | enqueue --file <jobs.jsonl>"
+                        + " | enqueue --stdin | status [--exact] | list [options] | dlq list [options] | dlq retry <jobId>|--all|[options]]");
+                return 2;
+            }
+        }
+        try (DaemonClient client = new DaemonClient(socketPath)) {
+            if (op == ControlProtocol.ENQUEUE && (rest.startsWith("--file") || rest.equals("--stdin"))) {
+                return client.stream(rest);
+            }
+            ControlProtocol.Message m = client.call(op, rest, System.out::print);
+            String text = m.text();
+            if (op == ControlProtocol.ENQUEUE) {
+                // drop the "OUTCOME jobId" line meant for scripts reading the socket directly
+                text = text.substring(text.indexOf('\n') + 1);
+            }
+            System.out.print(text.isEmpty() || text.endsWith("\n") ? text : text + "\n");
+            return m.code() == ControlProtocol.OK ? 0 : 1;
+        } catch (IOException e) {
+            if (!Files.exists(socketPath)) {
+                System.out.println("❌ No daemon is listening on " + socketPath + "; start one with 'queuectl daemon'");
+            } else {
+                System.out.println("❌ Daemon request failed: " + e.getMessage());
+            }
+            return 2;
+        }
+    }
+
+    /** enqueue --file jobs.jsonl | enqueue --stdin: pipeline one JSON job per line. */
+    private int stream(String args) throws IOException {
+        BufferedReader reader;
+        if (args.startsWith("--file")) {
+            String[] p = args.split(" ", 2);
+            if (p.length < 2) { System.out.println("Usage: queuectl enqueue --file <jobs.jsonl>"); return 2; }
+            reader = Files.newBufferedReader(Path.of(p[1].trim()), StandardCharsets.UTF_8);
+        } else {
+            reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        // line numbers of the jobs sent, in order, so each answer can be matched to its line
+        BlockingQueue<Integer> lines = new LinkedBlockingQueue<>();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try (reader) {
+                String line;
+                int lineNo = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNo++;
+                    if (line.isBlank()) continue;
+                    lines.add(lineNo);
+                    ControlProtocol.write(out, ControlProtocol.ENQUEUE, line);
+                }
+                out.flush();
+                channel.shutdownOutput();
+            } catch (IOException e) {
+                failure.set(e);
+                try {
+                    channel.shutdownOutput();
+                } catch (IOException ignored) {
+                    // the read side reports the broken connection
+                }
+            }
+        }, "queuectl-client-writer");
+        writer.start();
+
+        long enqueued = 0;
+        long skipped = 0;
+        ControlProtocol.Message m;
+        while ((m = ControlProtocol.read(in)) != null) {
+            Integer lineNo = lines.poll();
+            String text = m.text();
+            if (text.startsWith("ENQUEUED ")) {
+                enqueued++;
+            } else {
+                skipped++;
+                System.out.println("line " + lineNo + ": " + text.substring(text.indexOf('\n') + 1));
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) throw failure.get();
+        System.out.println("✅ Enqueued " + enqueued + " job(s), skipped " + skipped);
+        return skipped == 0 ? 0 : 1;
+    }
+}
@@ -0,0 +1,75 @@
+package com.queuectl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Requeues the dead jobs matching a {@link JobFilter} in id order, in chunks of
+ * dlqRetryBatchSize jobs that each take one transaction. Chunks are released no faster than
+ * dlqRetryRate ("500/s", "2000/m"; 0 for no limit), so emptying a DLQ of tens of thousands of
+ * jobs after an outage does not hand them to the workers, and to whatever the jobs call,
+ * all at once. A chunk never holds more than one second's worth of jobs.
+ */
+public class DlqRequeuer {
+    private final JobStorage storage;
+    private final int batchSize;
+    private final double defaultRate;
+
+    public DlqRequeuer(JobStorage storage, Config config) {
+        this.storage = storage;
+        this.batchSize = Math.max(1, config.getInt("dlqRetryBatchSize", 500));
+        this.defaultRate = parseRate(config.get("dlqRetryRate", "500/s"));
+    }
+
+    /** dlqRetryRate as jobs per second; 0 for no limit. */
+    public double defaultRate() {
+        return defaultRate;
+    }
+
+    /**
+     * Requeue every dead job matching {@code filter} (its state, paging and limit are
+     * overridden) at no more than {@code ratePerSecond}, reporting progress every few
+     * seconds. Returns the number requeued; stops early if the thread is interrupted.
+     */
+    public long requeue(JobFilter filter, double ratePerSecond, Consumer<String> progress) {
+        int chunk = ratePerSecond > 0 ? (int) Math.max(1, Math.min(batchSize, ratePerSecond)) : batchSize;
+        filter.state = "dead";
+        filter.limit = chunk;
+        filter.afterId = null;
+        long started = System.currentTimeMillis();
+        long reported = started;
+        long total = 0;
+        List<String> ids = new ArrayList<>(chunk);
+        while (!Thread.currentThread().isInterrupted()) {
+            ids.clear();
+            // requeued jobs leave the DLQ, so the cursor only ever moves past them
+            String last = storage.forEachJob(filter, job -> ids.add(job.id));
+            if (last == null) break;
+            filter.afterId = last;
+            total += storage.retryDLQJobs(ids);
+            long now = System.currentTimeMillis();
+            if (now - reported >= 2000) {
+                progress.accept("♻️ Requeued " + total + " job(s) so far...");
+                reported = now;
+            }
+            if (ids.size() < chunk) break;
+            if (ratePerSecond > 0) {
+                long due = started + (long) (total * 1000 / ratePerSecond);
+                try {
+                    if (due > now) Thread.sleep(due - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return total;
+    }
+
+    /** A rate as {@link JobLimits} reads it, "0" for none. */
+    public static double parseRate(String rate) {
+        double perSecond = JobLimits.parseRate(rate);
+        if (perSecond < 0) throw new IllegalArgumentException("Unreadable rate '" + rate + "' (expected e.g. 500/s, 2000/m or 0)");
+        return perSecond;
+    }
+}
@@ -0,0 +1,58 @@
+package com.queuectl;
+
+/** What {@link JobStorage#addJob(Job)} did with a job. */
+public class EnqueueResult {
+    public enum Outcome {
+        /** Stored as a new job. */
+        ENQUEUED,
+        /** Its idempotency key belongs to a job that is still pending, running or awaiting retry. */
+        ATTACHED,
+        /** Its idempotency key already ran within the cache TTL; {@link #result} holds the outcome. */
+        CACHED,
+        /** A job with the same id exists. */
+        DUPLICATE_ID,
+        /** A job in its depends_on does not exist; {@link #jobId} names it. */
+        UNKNOWN_DEPENDENCY,
+        /** Storage failed; nothing was stored. */
+        FAILED
+    }
+
+    public final Outcome outcome;
+    /** The new job's id, the live job attached to, the job whose result was cached, or the missing dependency. */
+    public final String jobId;
+    public final JobResult result;
+
+    private EnqueueResult(Outcome outcome, String jobId, JobResult result) {
+        this.outcome = outcome;
+        this.jobId = jobId;
+        this.result = result;
+    }
+
+    public static EnqueueResult enqueued(String jobId) {
+        return new EnqueueResult(Outcome.ENQUEUED, jobId, null);
+    }
+
+    public static EnqueueResult attached(String jobId) {
+        return new EnqueueResult(Outcome.ATTACHED, jobId, null);
+    }
+
+    public static EnqueueResult cached(JobResult result) {
+        return new EnqueueResult(Outcome.CACHED, result.jobId, result);
+    }
+
+    public static EnqueueResult duplicateId(String jobId) {
+        return new EnqueueResult(Outcome.DUPLICATE_ID, jobId, null);
+    }
+
+    public static EnqueueResult unknownDependency(String parentId) {
+        return new EnqueueResult(Outcome.UNKNOWN_DEPENDENCY, parentId, null);
+    }
+
+    public static EnqueueResult failed(String jobId) {
+        return new EnqueueResult(Outcome.FAILED, jobId, null);
+    }
+
+    public boolean isNew() {
+        return outcome == Outcome.ENQUEUED;
+    }
+}
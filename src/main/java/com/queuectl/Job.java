@@ -1,6 +1,7 @@
 package com.queuectl;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 public class Job {
     public String id;
@@ -8,8 +9,37 @@ public class Job {
     public String state;
     public int attempts;
     public int maxRetries;
+    /** Named queue the job is scheduled from. */
+    public String queue;
+    /** Higher runs first within its queue. */
+    public int priority;
+    /** Attempt time limit in seconds; 0 uses jobTimeoutSeconds from the config. */
+    public int timeoutSeconds;
+    /** Jobs enqueued with the same key share one run and, for cache_ttl after it, its result. */
+    public String idempotencyKey;
+    /** Seconds the result of a keyed job is reused; 0 uses resultTtlSeconds from the config. */
+    public int cacheTtlSeconds;
+    /** Ids of jobs that must complete before this one runs; it waits in 'blocked' until they have. */
+    public List<String> dependsOn = List.of();
+    /** Parents in dependsOn that have not completed yet. */
+    public int remainingDeps;
+    /** Why the last attempt failed: exit:&lt;code&gt;, timeout, io or dependency; null once the job completes. */
+    public String failureReason;
+    /** Output tail of that attempt, the I/O error, or which dead job a dependency failure came from. */
+    public String failureDetail;
+    /** Epoch millis before which the job must not run; 0 means immediately. */
+    public long nextRunAt;
     public LocalDateTime createdAt;
+    /** When the job was last claimed for a run. */
+    public LocalDateTime startedAt;
+    /** When the job reached 'completed' or 'dead'. */
+    public LocalDateTime finishedAt;
     public LocalDateTime updatedAt;
+    /** State as last read from or written to storage; lets storage keep its state counters in step. */
+    String storedState;
+    /** Exit code and output tail of the attempt that just ran, for the result cache; not stored with the job. */
+    int exitCode;
+    String output;
 
     public Job(String id, String command, int maxRetries) {
         this.id = id;
@@ -17,6 +47,7 @@ public class Job {
         this.state = "pending";
         this.attempts = 0;
         this.maxRetries = maxRetries;
+        this.queue = "default";
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
     }
@@ -0,0 +1,163 @@
+package com.queuectl;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only store for jobs purged from the database. Every archived batch becomes one
+ * immutable gzip segment {@code <archiveDir>/jobs-YYYY-MM-DD-HHmmss-SSS-N.jsonl.gz} with one
+ * JSON object per line. Segments are written under a temporary name and renamed into place
+ * once synced, so readers never see a partial segment.
+ */
+public class JobArchive {
+    private static final DateTimeFormatter SEGMENT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd-HHmmss-SSS");
+
+    private final Path dir;
+    private int sequence;
+
+    public JobArchive(Config config) {
+        this.dir = Path.of(config.get("archiveDir", "archive"));
+    }
+
+    /** Write {@code jobs} as a new segment; returns once it is durable on disk. */
+    public synchronized void append(List<Job> jobs) throws IOException {
+        if (jobs.isEmpty()) return;
+        Files.createDirectories(dir);
+        String name = "jobs-" + LocalDateTime.now().format(SEGMENT_TIME) + "-" + sequence++ + ".jsonl.gz";
+        Path tmp = dir.resolve(name + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            GZIPOutputStream gzip = new GZIPOutputStream(file, 64 * 1024);
+            Writer out = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+            for (Job job : jobs) {
+                out.write(toJson(job));
+                out.write('\n');
+            }
+            out.flush();
+            gzip.finish();
+            file.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stream archived jobs matching {@code filter} to {@code consumer}, oldest segment first.
+     * Segments archived before {@code filter.since} are skipped without being opened, since
+     * a job is always archived after it was created. {@code afterId} is not supported.
+     */
+    public void forEach(JobFilter filter, Consumer<Job> consumer) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        LocalDate sinceDay = filter.since > 0
+                ? LocalDate.ofInstant(Instant.ofEpochMilli(filter.since), ZoneId.systemDefault()) : null;
+        int shown = 0;
+        for (Path segment : segments()) {
+            if (sinceDay != null && segmentDay(segment).isBefore(sinceDay)) continue;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(segment), 64 * 1024), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    Job job = fromJson(line);
+                    if (!filter.matches(job)) continue;
+                    consumer.accept(job);
+                    if (filter.limit > 0 && ++shown >= filter.limit) return;
+                }
+            }
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "jobs-*.jsonl.gz")) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private static LocalDate segmentDay(Path segment) {
+        String name = segment.getFileName().toString();
+        return LocalDate.parse(name.substring("jobs-".length(), "jobs-YYYY-MM-DD".length()));
+    }
+
+    static String toJson(Job job) throws IOException {
+        StringWriter s = new StringWriter();
+        try (JsonWriter w = new JsonWriter(s)) {
+            w.beginObject();
+            w.name("id").value(job.id);
+            w.name("command").value(job.command);
+            w.name("state").value(job.state);
+            w.name("attempts").value(job.attempts);
+            w.name("max_retries").value(job.maxRetries);
+            w.name("queue").value(job.queue);
+            w.name("priority").value(job.priority);
+            w.name("timeout_seconds").value(job.timeoutSeconds);
+            if (job.idempotencyKey != null) w.name("idempotency_key").value(job.idempotencyKey);
+            w.name("created_at").value(JobStorage.toEpochMillis(job.createdAt));
+            w.name("started_at").value(JobStorage.toEpochMillis(job.startedAt));
+            w.name("finished_at").value(JobStorage.toEpochMillis(job.finishedAt));
+            if (job.failureReason != null) w.name("failure_reason").value(job.failureReason);
+            if (job.failureDetail != null) w.name("failure_detail").value(job.failureDetail);
+            w.endObject();
+        }
+        return s.toString();
+    }
+
+    static Job fromJson(String json) throws IOException {
+        Job job = new Job(null, null, 0);
+        try (JsonReader r = new JsonReader(new StringReader(json))) {
+            r.beginObject();
+            while (r.hasNext()) {
+                String name = r.nextName();
+                if (r.peek() == JsonToken.NULL) {
+                    r.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id" -> job.id = r.nextString();
+                    case "command" -> job.command = r.nextString();
+                    case "state" -> job.state = r.nextString();
+                    case "attempts" -> job.attempts = r.nextInt();
+                    case "max_retries" -> job.maxRetries = r.nextInt();
+                    case "queue" -> job.queue = r.nextString();
+                    case "priority" -> job.priority = r.nextInt();
+                    case "timeout_seconds" -> job.timeoutSeconds = r.nextInt();
+                    case "idempotency_key" -> job.idempotencyKey = r.nextString();
+                    case "created_at" -> job.createdAt = JobStorage.toLocalDateTime(r.nextLong());
+                    case "started_at" -> job.startedAt = JobStorage.toLocalDateTime(r.nextLong());
+                    case "finished_at" -> job.finishedAt = JobStorage.toLocalDateTime(r.nextLong());
+                    case "failure_reason" -> job.failureReason = r.nextString();
+                    case "failure_detail" -> job.failureDetail = r.nextString();
+                    default -> r.skipValue();
+                }
+            }
+            r.endObject();
+        }
+        job.updatedAt = job.finishedAt;
+        return job;
+    }
+}
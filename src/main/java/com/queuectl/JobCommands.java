@@ -0,0 +1,118 @@
+package com.queuectl;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides how a job's command is run. {@code java:<name> [args]} runs the registered
+ * {@link JobHandler} in-process. Anything else is a subprocess. With execMode=exec (the
+ * default), a command without quoting, globs, redirections, variables or shell builtins is
+ * split on whitespace and started directly. That skips the {@code /bin/sh} that
+ * execMode=shell starts for every attempt. Commands that need the shell always get one.
+ */
+public class JobCommands {
+    public static final String HANDLER_PREFIX = "java:";
+
+    // characters that make the shell do more than split words; '=' counts only in the first word
+    private static final String SHELL_CHARS = "|&;<>()$`\\\"'*?[]{}~#!\n";
+    private static final Set<String> SHELL_BUILTINS = Set.of(
+            ".", ":", "alias", "bg", "break", "cd", "command", "continue", "eval", "exec", "exit",
+            "export", "fg", "getopts", "hash", "jobs", "local", "read", "readonly", "return", "set",
+            "shift", "source", "times", "trap", "type", "ulimit", "umask", "unalias", "unset", "wait",
+            "if", "then", "else", "elif", "fi", "for", "while", "until", "do", "done", "case", "esac",
+            "function", "select", "time");
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
+
+    private final boolean directExec;
+    private final Map<String, JobHandler> handlers = new ConcurrentHashMap<>();
+    private final ExecutorService handlerPool;
+
+    public JobCommands(Config config) {
+        String mode = config.get("execMode", "exec").trim().toLowerCase();
+        if (!mode.equals("exec") && !mode.equals("shell")) {
+            throw new IllegalArgumentException("Unknown execMode '" + mode + "' (expected exec or shell)");
+        }
+        directExec = mode.equals("exec");
+        Iterator<JobHandler> found = ServiceLoader.load(JobHandler.class).iterator();
+        while (true) {
+            try {
+                if (!found.hasNext()) break;
+                register(found.next());
+            } catch (ServiceConfigurationError e) {
+                System.out.println("⚠️ Skipping job handler: " + e.getMessage());
+            }
+        }
+        AtomicInteger threads = new AtomicInteger();
+        handlerPool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "queuectl-handler-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Add or replace a handler, e.g. one built in code rather than found by ServiceLoader. */
+    public void register(JobHandler handler) {
+        handlers.put(handler.name(), handler);
+    }
+
+    public Set<String> handlerNames() {
+        return handlers.keySet();
+    }
+
+    public static boolean isHandler(String command) {
+        return command.startsWith(HANDLER_PREFIX);
+    }
+
+    /** Name of the handler a {@code java:} command asks for. */
+    public static String handlerName(String command) {
+        String rest = command.substring(HANDLER_PREFIX.length()).strip();
+        int space = rest.indexOf(' ');
+        return space < 0 ? rest : rest.substring(0, space);
+    }
+
+    /** Everything after the handler name, trimmed. */
+    public static String handlerArgs(String command) {
+        String rest = command.substring(HANDLER_PREFIX.length()).strip();
+        int space = rest.indexOf(' ');
+        return space < 0 ? "" : rest.substring(space + 1).strip();
+    }
+
+    /** The handler for a {@code java:} command, or null if none is registered under its name. */
+    public JobHandler handler(String command) {
+        return handlers.get(handlerName(command));
+    }
+
+    /** Threads in-process handlers run on; the pool grows with the number of running jobs. */
+    public ExecutorService handlerPool() {
+        return handlerPool;
+    }
+
+    public ProcessBuilder processBuilder(String command) {
+        if (WINDOWS) {
+            return new ProcessBuilder("cmd.exe", "/c", command);
+        }
+        List<String> argv = directExec ? directArgv(command) : null;
+        return argv != null ? new ProcessBuilder(argv) : new ProcessBuilder("/bin/sh", "-c", command);
+    }
+
+    /** The command split into words if the shell would do nothing more than that, else null. */
+    static List<String> directArgv(String command) {
+        String trimmed = command.strip();
+        if (trimmed.isEmpty()) return null;
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (SHELL_CHARS.indexOf(trimmed.charAt(i)) >= 0) return null;
+        }
+        String[] words = trimmed.split("\\s+");
+        // a leading NAME=value is a variable assignment
+        if (words[0].contains("=") || SHELL_BUILTINS.contains(words[0])) return null;
+        return List.of(words);
+    }
+}
@@ -0,0 +1,51 @@
+package com.queuectl;
+
+/**
+ * Filters and keyset paging for {@link JobStorage#forEachJob(JobFilter, java.util.function.Consumer)}.
+ * Unset fields do not filter. Rows come back in id order, so the last id of one page is
+ * the {@code afterId} cursor for the next.
+ */
+public class JobFilter {
+    public String state;
+    public String queue;
+    /** Only jobs whose id sorts after this cursor. */
+    public String afterId;
+    /** Only jobs created at or after this epoch millis; 0 for any. */
+    public long since;
+    public String commandPrefix;
+    /** Only jobs that finished at or after this epoch millis; 0 for any. */
+    public long finishedSince;
+    /**
+     * Only jobs whose failure reason is this one. A reason without a ":" also matches its
+     * detailed forms, so "exit" matches "exit:1" and "exit:137".
+     */
+    public String failureReason;
+    /** Only jobs whose command or failure detail contains this text. */
+    public String match;
+    /** Maximum rows to return; 0 for no limit. */
+    public int limit;
+
+    public JobFilter() {
+    }
+
+    public JobFilter(String state) {
+        this.state = state;
+    }
+
+    /** Whether {@code job} passes the filters; paging is up to the caller. */
+    public boolean matches(Job job) {
+        if (state != null && !state.equals(job.state)) return false;
+        if (queue != null && !queue.equals(job.queue)) return false;
+        if (since > 0 && JobStorage.toEpochMillis(job.createdAt) < since) return false;
+        if (finishedSince > 0 && JobStorage.toEpochMillis(job.finishedAt) < finishedSince) return false;
+        if (failureReason != null && !reasonMatches(job.failureReason)) return false;
+        if (match != null && !job.command.contains(match)
+                && (job.failureDetail == null || !job.failureDetail.contains(match))) return false;
+        return commandPrefix == null || job.command.startsWith(commandPrefix);
+    }
+
+    private boolean reasonMatches(String reason) {
+        if (reason == null) return false;
+        return reason.equals(failureReason) || !failureReason.contains(":") && reason.startsWith(failureReason + ":");
+    }
+}
@@ -0,0 +1,26 @@
+package com.queuectl;
+
+import java.io.PrintStream;
+
+/**
+ * Job logic that runs inside the queuectl JVM instead of as a subprocess. A job whose
+ * command is {@code java:<name> [args]} is run by the handler with that name, which saves
+ * the fork and exec of a process per attempt.
+ *
+ * Handlers are found with {@link java.util.ServiceLoader}: list implementations in
+ * {@code META-INF/services/com.queuectl.JobHandler} of a jar on the classpath. One instance
+ * serves all jobs, concurrently, so handlers must be thread-safe. An attempt that outlives
+ * its timeout is interrupted and must stop promptly.
+ */
+public interface JobHandler {
+    /** Name used in commands, e.g. {@code resize} for {@code java:resize}. */
+    String name();
+
+    /**
+     * Run one attempt. {@code args} is the rest of the command after the handler name
+     * (empty if none) and {@code out} goes to the job's log. Returns 0 on success and a
+     * non-zero exit code on failure; an exception also fails the attempt. {@code job} is
+     * read-only.
+     */
+    int run(Job job, String args, PrintStream out) throws Exception;
+}
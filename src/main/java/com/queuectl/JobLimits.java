@@ -0,0 +1,170 @@
+package com.queuectl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Concurrency caps and token-bucket rate limits for a queue or for commands starting with a
+ * prefix, checked when a worker claims a job:
+ * <pre>
+ * concurrencyLimits=queue:reports=2,prefix:curl=4
+ * rateLimits=queue:email=20/s,prefix:curl=100/m
+ * </pre>
+ * A job may match several rules and only starts when all of them have room.
+ *
+ * Every limit applies per process: the running counts and token buckets live in this JVM, so
+ * N worker processes or daemons sharing one database may together run N times the cap.
+ */
+public class JobLimits {
+    private final List<Rule> rules = new ArrayList<>();
+
+    public JobLimits(Config config) {
+        for (String entry : entries(config.get("concurrencyLimits", ""))) {
+            String[] kv = entry.split("=", 2);
+            Rule rule = rule(kv[0]);
+            if (rule == null || kv.length != 2) {
+                System.out.println("⚠️ Ignoring concurrency limit '" + entry + "'");
+                continue;
+            }
+            try {
+                rule.maxRunning = Math.max(1, Integer.parseInt(kv[1].trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("⚠️ Ignoring concurrency limit '" + entry + "'");
+            }
+        }
+        for (String entry : entries(config.get("rateLimits", ""))) {
+            String[] kv = entry.split("=", 2);
+            Rule rule = rule(kv[0]);
+            double perSecond = kv.length == 2 ? parseRate(kv[1].trim()) : -1;
+            if (rule == null || perSecond <= 0) {
+                System.out.println("⚠️ Ignoring rate limit '" + entry + "'");
+                continue;
+            }
+            rule.perSecond = perSecond;
+            // allow a burst of up to one second's worth of starts
+            rule.burst = Math.max(1, perSecond);
+            rule.tokens = rule.burst;
+            rule.refilledAt = System.nanoTime();
+        }
+    }
+
+    /** Whether any rule can match jobs of this queue, i.e. its claims need checking. */
+    public synchronized boolean limits(String queue) {
+        for (Rule rule : rules) {
+            if (rule.active() && (rule.prefix != null || rule.queue.equals(queue))) return true;
+        }
+        return false;
+    }
+
+    /** False while a rule for the queue itself is at its cap or out of tokens. */
+    public synchronized boolean queueOpen(String queue) {
+        long now = System.nanoTime();
+        for (Rule rule : rules) {
+            if (rule.queue != null && rule.queue.equals(queue) && !rule.hasRoom(now)) return false;
+        }
+        return true;
+    }
+
+    /** Command prefixes that cannot start another job right now; claims skip them. */
+    public synchronized List<String> blockedPrefixes() {
+        List<String> blocked = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Rule rule : rules) {
+            if (rule.prefix != null && !rule.hasRoom(now)) blocked.add(rule.prefix);
+        }
+        return blocked;
+    }
+
+    /** Take a slot and a token from every rule the job matches, or nothing if any is full. */
+    public synchronized boolean tryAcquire(Job job) {
+        long now = System.nanoTime();
+        for (Rule rule : rules) {
+            if (rule.matches(job) && !rule.hasRoom(now)) return false;
+        }
+        for (Rule rule : rules) {
+            if (!rule.matches(job)) continue;
+            rule.running++;
+            if (rule.perSecond > 0) rule.tokens--;
+        }
+        return true;
+    }
+
+    /** Give back the slots taken by {@link #tryAcquire(Job)}; returns true if a cap had room freed. */
+    public synchronized boolean release(Job job) {
+        boolean freed = false;
+        for (Rule rule : rules) {
+            if (!rule.matches(job) || rule.running == 0) continue;
+            rule.running--;
+            freed |= rule.maxRunning > 0;
+        }
+        return freed;
+    }
+
+    private Rule rule(String target) {
+        String[] kv = target.trim().split(":", 2);
+        if (kv.length != 2 || kv[1].isEmpty()) return null;
+        String kind = kv[0].trim();
+        if (!kind.equals("queue") && !kind.equals("prefix")) return null;
+        for (Rule rule : rules) {
+            if (kv[1].equals(kind.equals("queue") ? rule.queue : rule.prefix)) return rule;
+        }
+        Rule rule = new Rule();
+        if (kind.equals("queue")) rule.queue = kv[1].trim(); else rule.prefix = kv[1];
+        rules.add(rule);
+        return rule;
+    }
+
+    private static List<String> entries(String spec) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            if (!entry.isBlank()) entries.add(entry.trim());
+        }
+        return entries;
+    }
+
+    /** "20/s", "100/m" or "500/h" as starts per second; -1 if unreadable. */
+    static double parseRate(String rate) {
+        String[] parts = rate.split("/");
+        try {
+            double n = Double.parseDouble(parts[0].trim());
+            String unit = parts.length > 1 ? parts[1].trim() : "s";
+            return switch (unit) {
+                case "s" -> n;
+                case "m" -> n / 60;
+                case "h" -> n / 3600;
+                default -> -1;
+            };
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Rule {
+        String queue;
+        String prefix;
+        int maxRunning;
+        int running;
+        double perSecond;
+        double burst;
+        double tokens;
+        long refilledAt;
+
+        boolean active() {
+            return maxRunning > 0 || perSecond > 0;
+        }
+
+        boolean matches(Job job) {
+            return queue != null ? queue.equals(job.queue) : job.command.startsWith(prefix);
+        }
+
+        boolean hasRoom(long now) {
+            if (maxRunning > 0 && running >= maxRunning) return false;
+            if (perSecond > 0) {
+                tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * perSecond);
+                refilledAt = now;
+                return tokens >= 1;
+            }
+            return true;
+        }
+    }
+}
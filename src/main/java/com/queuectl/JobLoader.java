@@ -0,0 +1,153 @@
+package com.queuectl;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Streams newline-delimited JSON jobs into storage in batched transactions. Each line is
+ * parsed with its own JsonReader, so a malformed line is reported and skipped without
+ * aborting the load, and memory use is bounded by the batch size rather than the input.
+ */
+public class JobLoader {
+    private final JobStorage storage;
+    private final int defaultMaxRetries;
+    private final int batchSize;
+    private final Consumer<String> errors;
+    private final List<Job> batch = new ArrayList<>();
+    private final List<Integer> batchLines = new ArrayList<>();
+    private int lineNo;
+    private int loaded;
+    private int rejected;
+
+    public JobLoader(JobStorage storage, int defaultMaxRetries, int batchSize, Consumer<String> errors) {
+        this.storage = storage;
+        this.defaultMaxRetries = defaultMaxRetries;
+        this.batchSize = Math.max(1, batchSize);
+        this.errors = errors;
+    }
+
+    /** Feed every line of {@code in} to the loader and flush the final batch. */
+    public void load(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            accept(line);
+        }
+        finish();
+    }
+
+    public void accept(String line) {
+        lineNo++;
+        if (line.isBlank()) return;
+        try {
+            batch.add(parse(line, defaultMaxRetries));
+            batchLines.add(lineNo);
+        } catch (MalformedJsonException e) {
+            rejected++;
+            errors.accept("line " + lineNo + ": malformed JSON");
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            rejected++;
+            errors.accept("line " + lineNo + ": " + e.getMessage());
+        }
+        if (batch.size() >= batchSize) flush();
+    }
+
+    public void finish() {
+        flush();
+    }
+
+    public int loaded() {
+        return loaded;
+    }
+
+    public int rejected() {
+        return rejected;
+    }
+
+    /**
+     * Parse one job object, e.g. {"id":"job1","command":"echo hi","max_retries":3}.
+     * Optional "queue" (default "default"), "priority" (higher runs first, default 0),
+     * "timeout_seconds" (default jobTimeoutSeconds), "idempotency_key", "cache_ttl"
+     * (seconds, default resultTtlSeconds) and "depends_on" (ids of jobs enqueued earlier).
+     */
+    public static Job parse(String json, int defaultMaxRetries) throws IOException {
+        String id = null;
+        String command = null;
+        int maxRetries = defaultMaxRetries;
+        String queue = "default";
+        int priority = 0;
+        int timeoutSeconds = 0;
+        String idempotencyKey = null;
+        int cacheTtl = 0;
+        Set<String> dependsOn = new LinkedHashSet<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id" -> id = reader.nextString();
+                    case "command" -> command = reader.nextString();
+                    case "max_retries", "maxRetries" -> maxRetries = reader.nextInt();
+                    case "queue" -> queue = reader.nextString();
+                    case "priority" -> priority = reader.nextInt();
+                    case "timeout_seconds", "timeoutSeconds" -> timeoutSeconds = reader.nextInt();
+                    case "idempotency_key", "idempotencyKey" -> idempotencyKey = reader.nextString();
+                    case "cache_ttl", "cacheTtl" -> cacheTtl = reader.nextInt();
+                    case "depends_on", "dependsOn" -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            dependsOn.add(reader.nextString());
+                        }
+                        reader.endArray();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IllegalArgumentException("trailing data after job object");
+            }
+        }
+        if (id == null || id.isBlank()) throw new IllegalArgumentException("missing \"id\"");
+        if (command == null || command.isBlank()) throw new IllegalArgumentException("missing \"command\"");
+        if (queue.isBlank()) throw new IllegalArgumentException("empty \"queue\"");
+        if (idempotencyKey != null && idempotencyKey.isBlank()) throw new IllegalArgumentException("empty \"idempotency_key\"");
+        if (dependsOn.contains(id)) throw new IllegalArgumentException("job " + id + " depends on itself");
+        Job job = new Job(id, command, maxRetries);
+        job.queue = queue;
+        job.priority = priority;
+        job.timeoutSeconds = timeoutSeconds;
+        job.idempotencyKey = idempotencyKey;
+        job.cacheTtlSeconds = cacheTtl;
+        job.dependsOn = List.copyOf(dependsOn);
+        return job;
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) return;
+        boolean[] inserted = storage.addJobs(batch);
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i]) {
+                loaded++;
+            } else {
+                rejected++;
+                errors.accept("line " + batchLines.get(i) + ": job " + batch.get(i).id + " not inserted (duplicate id, unknown dependency, or idempotency key already queued or cached)");
+            }
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+}
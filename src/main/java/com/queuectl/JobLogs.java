@@ -0,0 +1,185 @@
+package com.queuectl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Per-job output files. Subprocess output is redirected straight into
+ * {@code <logDir>/<job-id>.log} by the OS, so the JVM never copies it. The last
+ * logTailKb of each finished attempt is kept in a small bounded cache for quick
+ * inspection; files are rotated by size and deleted after logRetentionDays.
+ */
+public class JobLogs {
+    private static final int MAX_CACHED_TAILS = 256;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final int tailBytes;
+    private final long retentionMs;
+    private final Map<String, byte[]> tails = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > MAX_CACHED_TAILS;
+        }
+    };
+    private ScheduledExecutorService cleaner;
+
+    public JobLogs(Config config) {
+        this.dir = Path.of(config.get("logDir", "logs"));
+        this.maxBytes = config.getInt("logMaxKb", 10240) * 1024L;
+        this.maxFiles = Math.max(1, config.getInt("logMaxFiles", 3));
+        this.tailBytes = config.getInt("logTailKb", 4) * 1024;
+        this.retentionMs = TimeUnit.DAYS.toMillis(config.getInt("logRetentionDays", 7));
+    }
+
+    public Path logFile(String jobId) {
+        return dir.resolve(jobId.replaceAll("[^A-Za-z0-9._-]", "_") + ".log");
+    }
+
+    /**
+     * Prepare the log for a new attempt: rotate it if it has grown past logMaxKb and write
+     * an attempt header. Returns the file to append the subprocess output to.
+     */
+    public File prepare(Job job) throws IOException {
+        Files.createDirectories(dir);
+        Path log = logFile(job.id);
+        if (Files.exists(log) && Files.size(log) >= maxBytes) {
+            rotate(log);
+        }
+        String header = "=== " + job.id + " attempt " + (job.attempts + 1) + " at " + LocalDateTime.now() + " ===\n";
+        Files.writeString(log, header, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return log.toFile();
+    }
+
+    /** Remember and return the tail of the job's log after an attempt finishes. */
+    public String captureTail(String jobId) {
+        byte[] tail = readTail(logFile(jobId));
+        synchronized (tails) {
+            tails.put(jobId, tail);
+        }
+        return new String(tail, StandardCharsets.UTF_8);
+    }
+
+    /** The part of a captured tail written by its last attempt, without the attempt header. */
+    public static String lastAttempt(String tail) {
+        // 0 when there is no header after the first line
+        int header = tail.lastIndexOf("\n=== ") + 1;
+        if (!tail.startsWith("=== ", header)) return tail;
+        int end = tail.indexOf('\n', header);
+        return end < 0 ? "" : tail.substring(end + 1);
+    }
+
+    /** The last logTailKb of output, from the cache if the attempt finished in this process. */
+    public String tail(String jobId) {
+        byte[] tail;
+        synchronized (tails) {
+            tail = tails.get(jobId);
+        }
+        if (tail == null) tail = readTail(logFile(jobId));
+        return new String(tail, StandardCharsets.UTF_8);
+    }
+
+    /** Copy the whole log to {@code out} without decoding it. */
+    public void copyTo(String jobId, WritableByteChannel out) throws IOException {
+        try (FileChannel in = FileChannel.open(logFile(jobId), StandardOpenOption.READ)) {
+            long pos = 0, size = in.size();
+            while (pos < size) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+        }
+    }
+
+    /** Copy the log to {@code out} as it grows until {@code finished} reports true. */
+    public void follow(String jobId, WritableByteChannel out, BooleanSupplier finished) throws IOException, InterruptedException {
+        Path log = logFile(jobId);
+        long pos = 0;
+        while (true) {
+            boolean done = finished.getAsBoolean();
+            if (Files.exists(log)) {
+                try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    if (size < pos) pos = 0; // rotated underneath us
+                    while (pos < size) {
+                        pos += in.transferTo(pos, size - pos, out);
+                    }
+                }
+            }
+            if (done) return;
+            Thread.sleep(200);
+        }
+    }
+
+    /** Start deleting logs older than logRetentionDays, once now and then hourly. */
+    public synchronized void startCleanup() {
+        if (cleaner != null) return;
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "queuectl-log-cleanup");
+            t.setDaemon(true);
+            return t;
+        });
+        cleaner.scheduleWithFixedDelay(this::cleanup, 0, 1, TimeUnit.HOURS);
+    }
+
+    public void cleanup() {
+        if (!Files.isDirectory(dir)) return;
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.log*")) {
+            for (Path f : files) {
+                try {
+                    if (Files.getLastModifiedTime(f).toMillis() < cutoff) Files.deleteIfExists(f);
+                } catch (IOException ignored) {
+                    // a log being written or removed concurrently; try again next round
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void rotate(Path log) throws IOException {
+        // job.log -> job.log.1 -> job.log.2 ..., dropping the oldest
+        Files.deleteIfExists(Path.of(log + "." + (maxFiles - 1)));
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            Path from = Path.of(log + "." + i);
+            if (Files.exists(from)) Files.move(from, Path.of(log + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (maxFiles > 1) {
+            Files.move(log, Path.of(log + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(log);
+        }
+    }
+
+    private byte[] readTail(Path log) {
+        if (!Files.exists(log)) return new byte[0];
+        try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size, tailBytes));
+            long start = size - buf.capacity();
+            while (buf.hasRemaining() && in.read(buf, start + buf.position()) > 0) {
+                // keep reading until the tail is filled
+            }
+            return buf.array();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new byte[0];
+        }
+    }
+}
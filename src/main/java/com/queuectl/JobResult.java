@@ -0,0 +1,41 @@
+package com.queuectl;
+
+/**
+ * Outcome of a finished job that carried an idempotency key, kept for resultTtlSeconds (or
+ * the job's own cache_ttl) so that enqueueing the same key again returns it instead of
+ * running the work twice.
+ */
+public class JobResult {
+    public final String key;
+    public final String jobId;
+    /** 'completed' or 'dead'. */
+    public final String state;
+    public final int exitCode;
+    /** Tail of the finishing attempt's output, up to logTailKb. */
+    public final String output;
+    public final long finishedAt;
+    public final long expiresAt;
+
+    public JobResult(String key, String jobId, String state, int exitCode, String output, long finishedAt, long expiresAt) {
+        this.key = key;
+        this.jobId = jobId;
+        this.state = state;
+        this.exitCode = exitCode;
+        this.output = output;
+        this.finishedAt = finishedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /** The result of {@code job}, which has just finished, or null if it is not to be cached. */
+    static JobResult of(Job job, int defaultTtlSeconds) {
+        int ttl = job.cacheTtlSeconds > 0 ? job.cacheTtlSeconds : defaultTtlSeconds;
+        if (job.idempotencyKey == null || ttl <= 0) return null;
+        long finished = JobStorage.toEpochMillis(job.finishedAt);
+        return new JobResult(job.idempotencyKey, job.id, job.state, job.exitCode,
+                job.output == null ? "" : job.output, finished, finished + ttl * 1000L);
+    }
+
+    public boolean expired(long now) {
+        return expiresAt <= now;
+    }
+}
@@ -0,0 +1,71 @@
+package com.queuectl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process wakeup for idle workers. Storage signals it whenever jobs become claimable
+ * and each signal wakes at most as many parked workers as there are new jobs.
+ *
+ * A worker reads {@link #generation()} before it tries to claim and passes it to
+ * {@link #await(long, long)}, so a signal that lands between an empty claim and parking
+ * is never lost.
+ */
+public class JobSignal {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private long generation;
+    private int waiters;
+    private int permits;
+
+    public long generation() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Announce {@code n} newly claimable jobs. */
+    public void signal(int n) {
+        if (n <= 0) return;
+        lock.lock();
+        try {
+            generation++;
+            int wake = Math.min(n, waiters - permits);
+            for (int i = 0; i < wake; i++) {
+                permits++;
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Park until signalled or until {@code timeoutMs} passes. Returns true straight away
+     * if a signal arrived after {@code seenGeneration} was read, false on timeout.
+     */
+    public boolean await(long seenGeneration, long timeoutMs) throws InterruptedException {
+        lock.lock();
+        try {
+            if (generation != seenGeneration) return true;
+            waiters++;
+            try {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                while (permits == 0) {
+                    if (nanos <= 0) return false;
+                    nanos = available.awaitNanos(nanos);
+                }
+                permits--;
+                return true;
+            } finally {
+                waiters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,152 +1,170 @@
 package com.queuectl;
 
-import java.sql.*;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
-public class JobStorage {
-    private static final String DB_URL = "jdbc:sqlite:jobs.db";
-
-    public JobStorage() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS jobs (
-                    id TEXT PRIMARY KEY,
-                    command TEXT,
-                    state TEXT,
-                    attempts INTEGER,
-                    maxRetries INTEGER
-                )
-            """);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+/**
+ * Where jobs live. {@link #open(Config)} picks the engine named by {@code storageEngine}:
+ * {@code sqlite} (default; {@link SqliteJobStorage}) or {@code log} ({@link LogJobStorage}).
+ */
+public interface JobStorage extends AutoCloseable {
+
+    static JobStorage open(Config config) {
+        String engine = config.get("storageEngine", "sqlite").trim().toLowerCase();
+        return switch (engine) {
+            case "sqlite" -> new SqliteJobStorage(config);
+            case "log" -> new LogJobStorage(config);
+            default -> throw new IllegalArgumentException("Unknown storageEngine '" + engine + "' (expected sqlite or log)");
+        };
     }
 
-    public void addJob(Job job) {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = conn.prepareStatement("INSERT INTO jobs VALUES (?,?,?,?,?)")) {
-            ps.setString(1, job.id);
-            ps.setString(2, job.command);
-            ps.setString(3, job.state);
-            ps.setInt(4, job.attempts);
-            ps.setInt(5, job.maxRetries);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Insert a job. A job with an idempotency key is not inserted while another job with the
+     * same key is pending, running or awaiting retry (it attaches to that job instead), nor
+     * while a result for the key is cached (the result is returned instead). The check and the
+     * insert are atomic, so concurrent producers cannot both start the same work.
+     */
+    EnqueueResult addJob(Job job);
+
+    /**
+     * Insert many jobs at once. A job whose id already exists or whose idempotency key is
+     * taken (see {@link #addJob(Job)}) is skipped instead of failing the whole batch; the
+     * result marks which jobs were actually inserted.
+     */
+    boolean[] addJobs(List<Job> jobs);
+
+    /** Names of all known queues, as a read-only view. */
+    Set<String> queues();
+
+    /** Signalled whenever jobs become claimable through this storage instance. */
+    JobSignal signal();
+
+    /** Atomically claim a single pending job. Returns the claimed Job or null if none. */
+    default Job claimNextPendingJob() {
+        List<Job> jobs = claimBatch(1);
+        return jobs.isEmpty() ? null : jobs.get(0);
     }
 
-    public List<Job> getPendingJobs() {
-        List<Job> jobs = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = conn.prepareStatement("SELECT * FROM jobs WHERE state='pending'");
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                Job job = new Job(
-                    rs.getString("id"),
-                    rs.getString("command"),
-                    rs.getInt("maxRetries")
-                );
-                job.state = rs.getString("state");
-                job.attempts = rs.getInt("attempts");
-                jobs.add(job);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return jobs;
+    /** Atomically move up to {@code n} due pending jobs from any queue to 'processing' and return them. */
+    default List<Job> claimBatch(int n) {
+        return claimBatch(null, n);
+    }
+
+    /**
+     * Claim up to {@code n} due jobs from one queue, highest priority first and oldest first
+     * within a priority. A null queue claims from any queue in no particular order.
+     */
+    default List<Job> claimBatch(String queue, int n) {
+        return claimBatch(queue, n, List.of());
     }
 
     /**
-     * Atomically claim a single pending job. Returns the claimed Job or null if none.
-     * Implementation: select a pending job id, then update it to 'processing' only if
-     * it is still pending. This avoids race conditions across multiple workers.
+     * Like {@link #claimBatch(String, int)}, but skipping jobs whose command starts with one
+     * of {@code skipPrefixes}, e.g. prefixes that are at their concurrency or rate limit.
      */
-    public Job claimNextPendingJob() {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
-            String selSql = "SELECT id, command, attempts, maxRetries FROM jobs WHERE state='pending' LIMIT 1";
-            try (PreparedStatement sel = conn.prepareStatement(selSql);
-                 ResultSet rs = sel.executeQuery()) {
-                if (!rs.next()) {
-                    conn.commit();
-                    return null;
-                }
-
-                String id = rs.getString("id");
-                String cmd = rs.getString("command");
-                int attempts = rs.getInt("attempts");
-                int maxRetries = rs.getInt("maxRetries");
-
-                // Try to atomically claim
-                try (PreparedStatement upd = conn.prepareStatement("UPDATE jobs SET state='processing' WHERE id=? AND state='pending'")) {
-                    upd.setString(1, id);
-                    int updated = upd.executeUpdate();
-                    if (updated == 1) {
-                        conn.commit();
-                        Job job = new Job(id, cmd, maxRetries);
-                        job.attempts = attempts;
-                        job.state = "processing";
-                        return job;
-                    } else {
-                        conn.rollback();
-                        return null; // someone else claimed it
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return null;
-        }
+    List<Job> claimBatch(String queue, int n, List<String> skipPrefixes);
+
+    /** Return claimed but never started jobs to 'pending', e.g. when workers stop. */
+    void releaseJobs(List<Job> jobs);
+
+    /** Extend the lease of every job this process is running. */
+    int renewLeases();
+
+    /** Return 'processing' jobs whose lease has run out to 'pending'. */
+    int reapExpiredLeases();
+
+    /** Owner id recorded on the jobs this process claims: {@code pid@host-nonce}. */
+    String owner();
+
+    /** The job with the given id, or null if there is none. */
+    Job getJob(String id);
+
+    default List<Job> getPendingJobs() {
+        return listJobsByState("pending");
     }
 
-    public List<Job> listJobsByState(String state) {
+    default List<Job> listJobsByState(String state) {
         List<Job> jobs = new ArrayList<>();
-        String sql = "SELECT * FROM jobs WHERE state=?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, state);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Job job = new Job(rs.getString("id"), rs.getString("command"), rs.getInt("maxRetries"));
-                    job.state = rs.getString("state");
-                    job.attempts = rs.getInt("attempts");
-                    jobs.add(job);
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        forEachJob(state, jobs::add);
         return jobs;
     }
 
-    public List<Job> listDLQ() {
+    default void forEachJob(String state, Consumer<Job> consumer) {
+        forEachJob(new JobFilter(state), consumer);
+    }
+
+    /**
+     * Stream jobs matching {@code filter} to {@code consumer} in id order. Returns the id of
+     * the last job seen (the cursor for the next page), or null if nothing matched.
+     */
+    String forEachJob(JobFilter filter, Consumer<Job> consumer);
+
+    default List<Job> listDLQ() {
         return listJobsByState("dead");
     }
 
-    public boolean retryDLQJob(String id) {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = conn.prepareStatement("UPDATE jobs SET state='pending', attempts=0 WHERE id=? AND state='dead'")) {
-            ps.setString(1, id);
-            int updated = ps.executeUpdate();
-            return updated == 1;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+    boolean retryDLQJob(String id);
+
+    /**
+     * Requeue the dead jobs among {@code ids} in one transaction, as {@link #retryDLQJob(String)}
+     * does one at a time. Returns how many were requeued.
+     */
+    int retryDLQJobs(List<String> ids);
+
+    /** Move failed jobs whose backoff has elapsed back to 'pending'. */
+    int promoteDueRetries();
+
+    /** Earliest next_run_at of a job waiting to be retried, or Long.MAX_VALUE if none. */
+    long nextRetryAt();
+
+    /**
+     * Write back the job's state. Returns false if the lease was lost, even if no other
+     * process has taken the job yet.
+     */
+    boolean updateJob(Job job);
+
+    /**
+     * Move up to {@code limit} jobs in {@code state} that finished before {@code finishedBefore}
+     * into {@code archive}, oldest first, and remove them from storage.
+     */
+    int archiveFinished(String state, long finishedBefore, int limit, JobArchive archive) throws IOException;
+
+    /**
+     * finished_at of the {@code keep}-th most recently finished job in {@code state}: jobs that
+     * finished before it fall outside a keep-newest-N retention. 0 if there are no more than
+     * {@code keep} such jobs.
+     */
+    long finishedCutoff(String state, int keep);
+
+    /** Give space freed by archiving back to the file system. */
+    void compact();
+
+    /** Exact per-state counts. */
+    Map<String, Long> countByState();
+
+    /** In-memory per-state counts, cheap enough to read on every status call. */
+    StateCounters counters();
+
+    @Override
+    void close();
+
+    /** failureDetail of a job that died because {@code parent} did. */
+    static String dependencyDied(String parent) {
+        return "depends on dead job " + parent;
+    }
+
+    static long toEpochMillis(LocalDateTime time) {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
-    public void updateJob(Job job) {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = conn.prepareStatement("UPDATE jobs SET state=?, attempts=? WHERE id=?")) {
-            ps.setString(1, job.state);
-            ps.setInt(2, job.attempts);
-            ps.setString(3, job.id);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    static LocalDateTime toLocalDateTime(long epochMillis) {
+        return epochMillis == 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
 }
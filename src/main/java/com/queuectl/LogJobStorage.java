@@ -0,0 +1,925 @@
+package com.queuectl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine that keeps every job in memory and makes changes durable by appending
+ * them to a {@link WriteAheadLog} (under walDir). Claims pop from per-queue priority
+ * indexes instead of running a query, and a commit costs one memory copy plus, with
+ * walSync=FULL, a share of the next group msync.
+ *
+ * The log is owned by a single process: there is no lease sharing between processes, and
+ * jobs found 'processing' on startup belonged to a process that died and are requeued.
+ * The indexes hold keys that may have gone stale; they are checked against the job map
+ * when used and dropped if the job has moved on. Results of keyed jobs are kept in memory
+ * and in the log as well, until they expire.
+ *
+ * Blocked jobs are found through an in-memory map from each parent to the jobs waiting on
+ * it, rebuilt from the jobs' depends_on at startup. A finishing job and the dependents it
+ * releases or kills are written as one record, so a crash keeps all of them or none.
+ */
+public class LogJobStorage implements JobStorage {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte RESULT = 3;
+    private static final byte RESULT_DELETE = 4;
+    private static final byte BATCH = 5;
+    private static final Set<String> LIVE_STATES = Set.of("pending", "blocked", "processing", "failed");
+    // claims that skip rate-limited prefixes look at no more than this many extra keys
+    private static final int MAX_SKIPPED = 256;
+
+    private static final Comparator<PendingKey> PENDING_ORDER = Comparator.comparingInt((PendingKey k) -> -k.priority())
+            .thenComparingLong(PendingKey::createdAt)
+            .thenComparingLong(PendingKey::seq);
+    private static final Comparator<TimeKey> TIME_ORDER = Comparator.comparingLong(TimeKey::time)
+            .thenComparingLong(TimeKey::seq);
+
+    /** Current value of every job; values are never modified once stored, only replaced. */
+    private final ConcurrentSkipListMap<String, Job> jobs = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<PendingKey>> pending = new ConcurrentHashMap<>();
+    // failed jobs by next_run_at
+    private final ConcurrentSkipListSet<TimeKey> delayed = new ConcurrentSkipListSet<>(TIME_ORDER);
+    // completed and dead jobs by finished_at
+    private final Map<String, ConcurrentSkipListSet<TimeKey>> finished = Map.of(
+            "completed", new ConcurrentSkipListSet<>(TIME_ORDER),
+            "dead", new ConcurrentSkipListSet<>(TIME_ORDER));
+    private final AtomicLong keySeq = new AtomicLong();
+    // idempotency key -> id of the live job that holds it
+    private final ConcurrentHashMap<String, String> liveKeys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, JobResult> results = new ConcurrentHashMap<>();
+    // parent id -> blocked jobs waiting for it; guarded by the log's monitor
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    private final int resultTtlSeconds;
+
+    private final WriteAheadLog wal;
+    private final long snapshotBytes;
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private final JobSignal signal = new JobSignal();
+    private final StateCounters counters = new StateCounters();
+    private final Set<String> queues = ConcurrentHashMap.newKeySet();
+    private final String owner = ProcessHandle.current().pid() + "@local";
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "queuectl-storage-maintenance");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LogJobStorage(Config config) {
+        Path dir = Path.of(config.get("walDir", "jobs-wal"));
+        int segmentBytes = Math.max(1, config.getInt("walSegmentMb", 64)) << 20;
+        boolean sync = config.get("walSync", "NORMAL").trim().equalsIgnoreCase("FULL");
+        snapshotBytes = Math.max(1, config.getInt("walSnapshotMb", 256)) * (1L << 20);
+        resultTtlSeconds = config.getInt("resultTtlSeconds", 3600);
+        try {
+            wal = new WriteAheadLog(dir, segmentBytes, sync, config.getInt("walFlushMs", 10), this::replay);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open job log: " + e.getMessage(), e);
+        }
+
+        queues.add("default");
+        List<Job> orphaned = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            counters.add(job.state, 1);
+            queues.add(job.queue);
+            if (job.idempotencyKey != null && LIVE_STATES.contains(job.state)) liveKeys.put(job.idempotencyKey, job.id);
+            if (job.state.equals("blocked")) awaitParents(job);
+            if (job.state.equals("processing")) {
+                orphaned.add(job);
+            } else {
+                index(job);
+            }
+        }
+        long lsn = 0;
+        for (Job job : orphaned) {
+            Job next = copy(job);
+            next.state = "pending";
+            lsn = Math.max(lsn, put(job.id, job, next));
+            index(next);
+        }
+        durable(lsn);
+        if (!orphaned.isEmpty()) {
+            System.out.println("⚠️ Requeued " + orphaned.size() + " job(s) left running by a previous process.");
+        }
+        // start the new process from a compact log
+        if (wal.replayedBytes() > 0) compact();
+        maintenance.scheduleWithFixedDelay(this::purgeResults, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public EnqueueResult addJob(Job job) {
+        Job stored = copy(job);
+        long lsn;
+        // the key and dependency checks and the insert must not interleave with another change
+        synchronized (wal) {
+            EnqueueResult taken = keyTaken(job.idempotencyKey);
+            if (taken != null) return taken;
+            EnqueueResult unknown = resolveDependencies(stored);
+            if (unknown != null) return unknown;
+            lsn = put(job.id, null, stored);
+            if (lsn < 0) return EnqueueResult.duplicateId(job.id);
+            track(stored);
+        }
+        durable(lsn);
+        index(stored);
+        queues.add(job.queue);
+        settled(job, stored);
+        if (stored.state.equals("pending")) signal.signal(1);
+        return EnqueueResult.enqueued(job.id);
+    }
+
+    /** One durability wait covers the whole batch. */
+    @Override
+    public boolean[] addJobs(List<Job> batch) {
+        boolean[] inserted = new boolean[batch.size()];
+        List<Job> stored = new ArrayList<>(batch.size());
+        long lsn = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Job job = batch.get(i);
+            Job next = copy(job);
+            synchronized (wal) {
+                if (keyTaken(job.idempotencyKey) != null || resolveDependencies(next) != null) continue;
+                long at = put(job.id, null, next);
+                if (at < 0) continue;
+                lsn = at;
+                track(next);
+            }
+            inserted[i] = true;
+            stored.add(next);
+            queues.add(job.queue);
+            settled(job, next);
+        }
+        durable(lsn);
+        stored.forEach(this::index);
+        signal.signal((int) stored.stream().filter(j -> j.state.equals("pending")).count());
+        return inserted;
+    }
+
+    @Override
+    public Set<String> queues() {
+        return Collections.unmodifiableSet(queues);
+    }
+
+    @Override
+    public JobSignal signal() {
+        return signal;
+    }
+
+    /**
+     * Pops keys off the queue's priority index and claims each job whose stored value still
+     * matches it. A claim that races with another change to the same job loses and moves on.
+     */
+    @Override
+    public List<Job> claimBatch(String queue, int n, List<String> skipPrefixes) {
+        List<Job> claimed = new ArrayList<>(n);
+        if (n <= 0) return claimed;
+        long start = System.nanoTime();
+        Collection<ConcurrentSkipListSet<PendingKey>> sets = queue == null ? pending.values() : List.of(pendingSet(queue));
+        List<PendingKey> skipped = new ArrayList<>();
+        long lsn = 0;
+        for (ConcurrentSkipListSet<PendingKey> set : sets) {
+            PendingKey key;
+            while (claimed.size() < n && skipped.size() <= MAX_SKIPPED && (key = set.pollFirst()) != null) {
+                Job cur = jobs.get(key.id());
+                if (cur == null || !cur.state.equals("pending") || cur.priority != key.priority()) continue;
+                if (startsWithAny(cur.command, skipPrefixes)) {
+                    skipped.add(key);
+                    continue;
+                }
+                Job next = copy(cur);
+                next.state = "processing";
+                next.startedAt = LocalDateTime.now();
+                next.updatedAt = next.startedAt;
+                long at = put(cur.id, cur, next);
+                if (at < 0) continue;
+                lsn = at;
+                claimed.add(copy(next));
+            }
+            set.addAll(skipped);
+            skipped.clear();
+            if (claimed.size() >= n) break;
+        }
+        durable(lsn);
+        Metrics.CLAIM.record(Metrics.micros(start));
+        Metrics.CLAIMED.add(claimed.size());
+        if (claimed.isEmpty()) Metrics.EMPTY_CLAIMS.increment();
+        return claimed;
+    }
+
+    @Override
+    public void releaseJobs(List<Job> released) {
+        List<Job> requeued = new ArrayList<>();
+        long lsn = 0;
+        for (Job job : released) {
+            Job cur = jobs.get(job.id);
+            if (cur == null || !cur.state.equals("processing")) continue;
+            Job next = copy(cur);
+            next.state = "pending";
+            long at = put(cur.id, cur, next);
+            if (at < 0) continue;
+            lsn = at;
+            requeued.add(next);
+        }
+        durable(lsn);
+        requeued.forEach(this::index);
+        signal.signal(requeued.size());
+    }
+
+    /** Nothing to renew: no other process can take this log's jobs. */
+    @Override
+    public int renewLeases() {
+        return 0;
+    }
+
+    /** Orphaned jobs are requeued on startup instead. */
+    @Override
+    public int reapExpiredLeases() {
+        return 0;
+    }
+
+    @Override
+    public String owner() {
+        return owner;
+    }
+
+    @Override
+    public Job getJob(String id) {
+        Job job = jobs.get(id);
+        return job == null ? null : copy(job);
+    }
+
+    /** Walks the id-ordered job map from the cursor; filters other than the id are checked per job. */
+    @Override
+    public String forEachJob(JobFilter filter, Consumer<Job> consumer) {
+        NavigableMap<String, Job> view = filter.afterId == null ? jobs : jobs.tailMap(filter.afterId, false);
+        String last = null;
+        int shown = 0;
+        for (Job job : view.values()) {
+            if (!filter.matches(job)) continue;
+            consumer.accept(copy(job));
+            last = job.id;
+            if (filter.limit > 0 && ++shown >= filter.limit) break;
+        }
+        return last;
+    }
+
+    @Override
+    public boolean retryDLQJob(String id) {
+        return retryDLQJobs(List.of(id)) == 1;
+    }
+
+    /**
+     * A job with dependencies that have not all completed goes back to 'blocked' rather than
+     * 'pending'. The cached result of a requeued job is deleted with it, so its idempotency
+     * key attaches to the retry instead of answering with the dead result.
+     */
+    @Override
+    public int retryDLQJobs(List<String> ids) {
+        List<Job> before = new ArrayList<>();
+        List<Job> after = new ArrayList<>();
+        long lsn = 0;
+        synchronized (wal) {
+            for (String id : new LinkedHashSet<>(ids)) {
+                Job cur = jobs.get(id);
+                if (cur == null || !cur.state.equals("dead")) continue;
+                Job next = copy(cur);
+                next.attempts = 0;
+                next.nextRunAt = 0;
+                next.remainingDeps = awaitParents(next);
+                next.state = next.remainingDeps > 0 ? "blocked" : "pending";
+                before.add(cur);
+                after.add(next);
+            }
+            if (!after.isEmpty()) lsn = putAll(before, after);
+            for (Job job : after) {
+                JobResult result = job.idempotencyKey == null ? null : results.get(job.idempotencyKey);
+                if (result != null && result.jobId.equals(job.id) && results.remove(result.key, result)) {
+                    lsn = wal.append(encodeDelete(RESULT_DELETE, result.key));
+                }
+            }
+        }
+        durable(lsn);
+        after.forEach(this::index);
+        signal.signal((int) after.stream().filter(j -> j.state.equals("pending")).count());
+        return after.size();
+    }
+
+    @Override
+    public int promoteDueRetries() {
+        long now = System.currentTimeMillis();
+        List<Job> promoted = new ArrayList<>();
+        long lsn = 0;
+        TimeKey key;
+        while ((key = delayed.pollFirst()) != null) {
+            if (key.time() > now) {
+                delayed.add(key);
+                break;
+            }
+            Job cur = jobs.get(key.id());
+            if (cur == null || !cur.state.equals("failed") || cur.nextRunAt != key.time()) continue;
+            Job next = copy(cur);
+            next.state = "pending";
+            long at = put(cur.id, cur, next);
+            if (at < 0) continue;
+            lsn = at;
+            promoted.add(next);
+        }
+        durable(lsn);
+        promoted.forEach(this::index);
+        signal.signal(promoted.size());
+        return promoted.size();
+    }
+
+    @Override
+    public long nextRetryAt() {
+        for (TimeKey key : delayed) {
+            Job cur = jobs.get(key.id());
+            if (cur != null && cur.state.equals("failed") && cur.nextRunAt == key.time()) return key.time();
+            delayed.remove(key);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * A job that finishes settles its dependents: on completion each blocked child waits for
+     * one parent fewer and the last one makes it 'pending'; on death every blocked job
+     * downstream becomes 'dead'.
+     */
+    @Override
+    public boolean updateJob(Job job) {
+        long start = System.nanoTime();
+        job.updatedAt = LocalDateTime.now();
+        JobResult result = null;
+        if (job.state.equals("completed") || job.state.equals("dead")) {
+            job.finishedAt = job.updatedAt;
+            result = JobResult.of(job, resultTtlSeconds);
+        }
+        boolean updated = false;
+        while (true) {
+            Job cur = jobs.get(job.id);
+            if (cur == null) break;
+            List<Job> before = new ArrayList<>(List.of(cur));
+            List<Job> after = new ArrayList<>(List.of(copy(job)));
+            long lsn = -1;
+            synchronized (wal) {
+                if (jobs.get(job.id) == cur) {
+                    settleDependents(after.get(0), before, after);
+                    lsn = putAll(before, after);
+                }
+                if (lsn >= 0 && result != null) {
+                    results.put(result.key, result);
+                    lsn = wal.append(encodeResult(result));
+                }
+            }
+            // lost a race with another change to the job: like an UPDATE, the last write wins
+            if (lsn < 0) continue;
+            durable(lsn);
+            after.forEach(this::index);
+            signal.signal((int) after.stream().skip(1).filter(j -> j.state.equals("pending")).count());
+            job.storedState = job.state;
+            updated = true;
+            break;
+        }
+        Metrics.UPDATE.record(Metrics.micros(start));
+        return updated;
+    }
+
+    /**
+     * Segments are written before the jobs are removed. A crash in between leaves them in
+     * storage as well as in the archive, but never loses them. A job retried while waiting on
+     * a dead parent dies when that parent is archived.
+     */
+    @Override
+    public int archiveFinished(String state, long finishedBefore, int limit, JobArchive archive) throws IOException {
+        ConcurrentSkipListSet<TimeKey> set = finished.get(state);
+        if (set == null) return 0;
+        List<TimeKey> keys = new ArrayList<>();
+        List<Job> batch = new ArrayList<>();
+        TimeKey key;
+        while (batch.size() < limit && (key = set.pollFirst()) != null) {
+            if (key.time() >= finishedBefore) {
+                set.add(key);
+                break;
+            }
+            Job cur = jobs.get(key.id());
+            if (cur == null || !cur.state.equals(state) || JobStorage.toEpochMillis(cur.finishedAt) != key.time()) continue;
+            keys.add(key);
+            batch.add(cur);
+        }
+        if (batch.isEmpty()) return 0;
+        try {
+            archive.append(batch.stream().map(LogJobStorage::copy).toList());
+        } catch (IOException e) {
+            set.addAll(keys);
+            throw e;
+        }
+        long lsn = 0;
+        int removed = 0;
+        List<Job> doomed = new ArrayList<>();
+        for (Job job : batch) {
+            synchronized (wal) {
+                long at = put(job.id, job, null);
+                if (at < 0) continue;
+                lsn = at;
+                removed++;
+                List<Job> before = new ArrayList<>();
+                List<Job> after = new ArrayList<>();
+                settleDependents(job, before, after);
+                if (!after.isEmpty()) {
+                    lsn = putAll(before, after);
+                    doomed.addAll(after);
+                }
+            }
+        }
+        durable(lsn);
+        doomed.forEach(this::index);
+        return removed;
+    }
+
+    @Override
+    public long finishedCutoff(String state, int keep) {
+        ConcurrentSkipListSet<TimeKey> set = finished.get(state);
+        if (set == null || keep <= 0) return 0;
+        int seen = 0;
+        for (TimeKey key : set.descendingSet()) {
+            Job cur = jobs.get(key.id());
+            if (cur == null || !cur.state.equals(state) || JobStorage.toEpochMillis(cur.finishedAt) != key.time()) continue;
+            if (++seen == keep) return key.time();
+        }
+        return 0;
+    }
+
+    /** Writes a snapshot of all jobs and results, which lets the log it covers be deleted. */
+    @Override
+    public void compact() {
+        try {
+            Iterator<Job> jobIt = jobs.values().iterator();
+            Iterator<JobResult> resultIt = results.values().iterator();
+            wal.snapshot(new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return jobIt.hasNext() || resultIt.hasNext();
+                }
+
+                @Override
+                public byte[] next() {
+                    return jobIt.hasNext() ? encodePut(jobIt.next()) : encodeResult(resultIt.next());
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Map<String, Long> countByState() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Job job : jobs.values()) {
+            counts.merge(job.state, 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    /** Exact: every change goes through this process. */
+    @Override
+    public StateCounters counters() {
+        return counters;
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        wal.close();
+    }
+
+    /**
+     * Replace the job's value if it is still {@code expected} (null: absent) with {@code next}
+     * (null: delete) and log the change. Returns the record's LSN, or -1 if the job has
+     * changed in the meantime.
+     */
+    private long put(String id, Job expected, Job next) {
+        byte[] record = next == null ? encodeDelete(DELETE, id) : encodePut(next);
+        long lsn;
+        synchronized (wal) {
+            if (jobs.get(id) != expected) return -1;
+            if (next == null) {
+                jobs.remove(id);
+            } else {
+                jobs.put(id, next);
+            }
+            lsn = wal.append(record);
+        }
+        if (expected != null) counters.add(expected.state, -1);
+        if (next != null) counters.add(next.state, 1);
+        return lsn;
+    }
+
+    /**
+     * Replace each job in {@code expected} with the job at the same position in {@code next}
+     * and log all of them as one record. Returns the record's LSN, or -1 (changing nothing)
+     * if any of them has changed in the meantime.
+     */
+    private long putAll(List<Job> expected, List<Job> next) {
+        if (next.size() == 1) return put(next.get(0).id, expected.get(0), next.get(0));
+        byte[] record = encodeBatch(next);
+        long lsn;
+        synchronized (wal) {
+            for (Job job : expected) {
+                if (jobs.get(job.id) != job) return -1;
+            }
+            for (Job job : next) {
+                jobs.put(job.id, job);
+            }
+            lsn = wal.append(record);
+        }
+        for (int i = 0; i < next.size(); i++) {
+            counters.move(expected.get(i).state, next.get(i).state, 1);
+        }
+        return lsn;
+    }
+
+    /** Wait for {@code lsn} per walSync and start a snapshot in the background once the log has grown past walSnapshotMb. */
+    private void durable(long lsn) {
+        if (lsn <= 0) return;
+        wal.awaitDurable(lsn);
+        if (wal.bytesSinceSnapshot() > snapshotBytes && snapshotting.compareAndSet(false, true)) {
+            maintenance.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    snapshotting.set(false);
+                }
+            });
+        }
+    }
+
+    /** How an enqueue with {@code key} is answered instead of inserting, or null if the key is free. Caller holds the log's monitor. */
+    private EnqueueResult keyTaken(String key) {
+        if (key == null) return null;
+        JobResult result = results.get(key);
+        if (result != null && !result.expired(System.currentTimeMillis())) return EnqueueResult.cached(result);
+        String id = liveKeys.get(key);
+        if (id == null) return null;
+        Job holder = jobs.get(id);
+        if (holder != null && key.equals(holder.idempotencyKey) && LIVE_STATES.contains(holder.state)) {
+            return EnqueueResult.attached(id);
+        }
+        liveKeys.remove(key, id);
+        return null;
+    }
+
+    /**
+     * Set a job about to be enqueued to 'blocked' while any of its parents has not completed,
+     * to 'dead' if one of them is dead, and back to 'pending' otherwise, whatever an earlier
+     * attempt to enqueue the same object left behind. Returns the outcome if a parent does
+     * not exist, else null. Caller holds the log's monitor.
+     */
+    private EnqueueResult resolveDependencies(Job job) {
+        int remaining = 0;
+        String deadParent = null;
+        for (String parent : job.dependsOn) {
+            Job p = jobs.get(parent);
+            if (p == null) return EnqueueResult.unknownDependency(parent);
+            if (p.state.equals("completed")) continue;
+            remaining++;
+            if (p.state.equals("dead")) deadParent = parent;
+        }
+        job.remainingDeps = remaining;
+        if (deadParent != null) {
+            job.state = "dead";
+            job.finishedAt = LocalDateTime.now();
+            job.failureReason = "dependency";
+            job.failureDetail = JobStorage.dependencyDied(deadParent);
+        } else {
+            job.state = remaining > 0 ? "blocked" : "pending";
+            job.finishedAt = null;
+            job.failureReason = null;
+            job.failureDetail = null;
+        }
+        return null;
+    }
+
+    /** Record a job that was just inserted under its idempotency key and with its parents. Caller holds the log's monitor. */
+    private void track(Job job) {
+        if (job.idempotencyKey != null) liveKeys.put(job.idempotencyKey, job.id);
+        if (job.state.equals("blocked")) awaitParents(job);
+    }
+
+    /** Copy what storage decided about an enqueued job back to the caller's copy. */
+    private static void settled(Job job, Job stored) {
+        job.state = stored.state;
+        job.remainingDeps = stored.remainingDeps;
+        job.finishedAt = stored.finishedAt;
+        job.failureReason = stored.failureReason;
+        job.failureDetail = stored.failureDetail;
+        job.storedState = stored.state;
+    }
+
+    /**
+     * Register {@code job} as waiting on each of its parents that has not completed and return
+     * how many that is. Parents that no longer exist (archived) do not hold it back. Caller
+     * holds the log's monitor.
+     */
+    private int awaitParents(Job job) {
+        int waiting = 0;
+        for (String parent : job.dependsOn) {
+            Job p = jobs.get(parent);
+            if (p == null || p.state.equals("completed")) continue;
+            dependents.computeIfAbsent(parent, k -> new HashSet<>()).add(job.id);
+            waiting++;
+        }
+        return waiting;
+    }
+
+    /**
+     * Add to {@code before}/{@code after} the changes that {@code parent} finishing makes to
+     * the blocked jobs waiting on it: one parent fewer on completion, and on death every
+     * blocked job downstream is dead too. Caller holds the log's monitor.
+     */
+    private void settleDependents(Job parent, List<Job> before, List<Job> after) {
+        boolean dead = parent.state.equals("dead");
+        if (!dead && !parent.state.equals("completed")) return;
+        Set<String> waiting = dependents.remove(parent.id);
+        if (waiting == null) return;
+        LocalDateTime now = LocalDateTime.now();
+        Deque<String> todo = new ArrayDeque<>(waiting);
+        Set<String> seen = new HashSet<>();
+        String id;
+        while ((id = todo.poll()) != null) {
+            if (!seen.add(id)) continue;
+            Job cur = jobs.get(id);
+            if (cur == null || !cur.state.equals("blocked")) continue;
+            Job next = copy(cur);
+            next.updatedAt = now;
+            if (dead) {
+                next.state = "dead";
+                next.finishedAt = now;
+                next.failureReason = "dependency";
+                next.failureDetail = JobStorage.dependencyDied(parent.id);
+                Set<String> more = dependents.remove(id);
+                if (more != null) todo.addAll(more);
+            } else if (--next.remainingDeps <= 0) {
+                next.remainingDeps = 0;
+                next.state = "pending";
+            }
+            before.add(cur);
+            after.add(next);
+        }
+    }
+
+    private void purgeResults() {
+        long now = System.currentTimeMillis();
+        long lsn = 0;
+        for (JobResult result : results.values()) {
+            if (!result.expired(now)) continue;
+            synchronized (wal) {
+                if (results.remove(result.key, result)) lsn = wal.append(encodeDelete(RESULT_DELETE, result.key));
+            }
+        }
+        durable(lsn);
+    }
+
+    /** Add index keys for a value that was just stored. */
+    private void index(Job job) {
+        switch (job.state) {
+            case "pending" -> pendingSet(job.queue).add(
+                    new PendingKey(job.priority, JobStorage.toEpochMillis(job.createdAt), keySeq.incrementAndGet(), job.id));
+            case "failed" -> delayed.add(new TimeKey(job.nextRunAt, keySeq.incrementAndGet(), job.id));
+            case "completed", "dead" -> finished.get(job.state).add(
+                    new TimeKey(JobStorage.toEpochMillis(job.finishedAt), keySeq.incrementAndGet(), job.id));
+            default -> { }
+        }
+    }
+
+    private ConcurrentSkipListSet<PendingKey> pendingSet(String queue) {
+        return pending.computeIfAbsent(queue, q -> new ConcurrentSkipListSet<>(PENDING_ORDER));
+    }
+
+    private void replay(ByteBuffer record) {
+        byte type = record.get();
+        if (type == PUT) {
+            Job job = decodeJob(record);
+            jobs.put(job.id, job);
+        } else if (type == DELETE) {
+            jobs.remove(getString(record));
+        } else if (type == RESULT) {
+            JobResult result = decodeResult(record);
+            results.put(result.key, result);
+        } else if (type == RESULT_DELETE) {
+            results.remove(getString(record));
+        } else if (type == BATCH) {
+            while (record.hasRemaining()) {
+                int length = record.getInt();
+                replay(record.slice(record.position(), length));
+                record.position(record.position() + length);
+            }
+        }
+    }
+
+    private static boolean startsWithAny(String command, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (command.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static Job copy(Job job) {
+        Job c = new Job(job.id, job.command, job.maxRetries);
+        c.state = job.state;
+        c.attempts = job.attempts;
+        c.queue = job.queue;
+        c.priority = job.priority;
+        c.timeoutSeconds = job.timeoutSeconds;
+        c.idempotencyKey = job.idempotencyKey;
+        c.cacheTtlSeconds = job.cacheTtlSeconds;
+        c.dependsOn = job.dependsOn;
+        c.remainingDeps = job.remainingDeps;
+        c.failureReason = job.failureReason;
+        c.failureDetail = job.failureDetail;
+        c.nextRunAt = job.nextRunAt;
+        c.createdAt = job.createdAt;
+        c.startedAt = job.startedAt;
+        c.finishedAt = job.finishedAt;
+        c.updatedAt = job.updatedAt;
+        c.storedState = job.state;
+        return c;
+    }
+
+    private static byte[] encodePut(Job job) {
+        byte[] id = job.id.getBytes(StandardCharsets.UTF_8);
+        byte[] command = job.command.getBytes(StandardCharsets.UTF_8);
+        byte[] state = job.state.getBytes(StandardCharsets.UTF_8);
+        byte[] queue = job.queue.getBytes(StandardCharsets.UTF_8);
+        byte[] key = job.idempotencyKey == null ? null : job.idempotencyKey.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> parents = job.dependsOn.stream().map(p -> p.getBytes(StandardCharsets.UTF_8)).toList();
+        byte[] reason = job.failureReason == null ? null : job.failureReason.getBytes(StandardCharsets.UTF_8);
+        byte[] detail = job.failureDetail == null ? null : job.failureDetail.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = ByteBuffer.allocate(1 + 16 + id.length + command.length + state.length + queue.length + 16 + 40
+                + 4 + (key == null ? 0 : key.length) + 4
+                + 4 + parents.stream().mapToInt(p -> 4 + p.length).sum() + 4
+                + 8 + (reason == null ? 0 : reason.length) + (detail == null ? 0 : detail.length));
+        b.put(PUT);
+        putBytes(b, id);
+        putBytes(b, command);
+        putBytes(b, state);
+        putBytes(b, queue);
+        b.putInt(job.attempts).putInt(job.maxRetries).putInt(job.priority).putInt(job.timeoutSeconds);
+        b.putLong(job.nextRunAt);
+        b.putLong(JobStorage.toEpochMillis(job.createdAt));
+        b.putLong(JobStorage.toEpochMillis(job.startedAt));
+        b.putLong(JobStorage.toEpochMillis(job.finishedAt));
+        b.putLong(JobStorage.toEpochMillis(job.updatedAt));
+        // fields added later go at the end, so older records still decode
+        putNullable(b, key);
+        b.putInt(job.cacheTtlSeconds);
+        b.putInt(parents.size());
+        parents.forEach(p -> putBytes(b, p));
+        b.putInt(job.remainingDeps);
+        putNullable(b, reason);
+        putNullable(b, detail);
+        return b.array();
+    }
+
+    /** Several job values that must be replayed together. */
+    private static byte[] encodeBatch(List<Job> batch) {
+        List<byte[]> puts = batch.stream().map(LogJobStorage::encodePut).toList();
+        ByteBuffer b = ByteBuffer.allocate(1 + puts.stream().mapToInt(p -> 4 + p.length).sum());
+        b.put(BATCH);
+        puts.forEach(p -> putBytes(b, p));
+        return b.array();
+    }
+
+    private static byte[] encodeDelete(byte type, String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = ByteBuffer.allocate(1 + 4 + bytes.length);
+        b.put(type);
+        putBytes(b, bytes);
+        return b.array();
+    }
+
+    private static byte[] encodeResult(JobResult result) {
+        byte[] key = result.key.getBytes(StandardCharsets.UTF_8);
+        byte[] jobId = result.jobId.getBytes(StandardCharsets.UTF_8);
+        byte[] state = result.state.getBytes(StandardCharsets.UTF_8);
+        byte[] output = result.output.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = ByteBuffer.allocate(1 + 16 + key.length + jobId.length + state.length + output.length + 4 + 16);
+        b.put(RESULT);
+        putBytes(b, key);
+        putBytes(b, jobId);
+        putBytes(b, state);
+        putBytes(b, output);
+        b.putInt(result.exitCode).putLong(result.finishedAt).putLong(result.expiresAt);
+        return b.array();
+    }
+
+    private static JobResult decodeResult(ByteBuffer b) {
+        String key = getString(b);
+        String jobId = getString(b);
+        String state = getString(b);
+        String output = getString(b);
+        return new JobResult(key, jobId, state, b.getInt(), output, b.getLong(), b.getLong());
+    }
+
+    private static Job decodeJob(ByteBuffer b) {
+        String id = getString(b);
+        String command = getString(b);
+        String state = getString(b);
+        String queue = getString(b);
+        int attempts = b.getInt();
+        Job job = new Job(id, command, b.getInt());
+        job.state = state;
+        job.queue = queue;
+        job.attempts = attempts;
+        job.priority = b.getInt();
+        job.timeoutSeconds = b.getInt();
+        job.nextRunAt = b.getLong();
+        job.createdAt = JobStorage.toLocalDateTime(b.getLong());
+        job.startedAt = JobStorage.toLocalDateTime(b.getLong());
+        job.finishedAt = JobStorage.toLocalDateTime(b.getLong());
+        job.updatedAt = JobStorage.toLocalDateTime(b.getLong());
+        if (b.hasRemaining()) {
+            job.idempotencyKey = getNullable(b);
+            job.cacheTtlSeconds = b.getInt();
+        }
+        if (b.hasRemaining()) {
+            String[] parents = new String[b.getInt()];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = getString(b);
+            }
+            job.dependsOn = List.of(parents);
+            job.remainingDeps = b.getInt();
+        }
+        if (b.hasRemaining()) {
+            job.failureReason = getNullable(b);
+            job.failureDetail = getNullable(b);
+        }
+        job.storedState = state;
+        return job;
+    }
+
+    private static void putBytes(ByteBuffer b, byte[] bytes) {
+        b.putInt(bytes.length).put(bytes);
+    }
+
+    /** Like {@link #putBytes}, with length -1 for null. */
+    private static void putNullable(ByteBuffer b, byte[] bytes) {
+        if (bytes == null) {
+            b.putInt(-1);
+        } else {
+            putBytes(b, bytes);
+        }
+    }
+
+    private static String getNullable(ByteBuffer b) {
+        int length = b.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String getString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getInt()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Position of a pending job in its queue's claim order. */
+    private record PendingKey(int priority, long createdAt, long seq, String id) {
+    }
+
+    /** A job in a time-ordered index: failed jobs by next_run_at, finished ones by finished_at. */
+    private record TimeKey(long time, long seq, String id) {
+    }
+}
@@ -1,7 +1,13 @@
 package com.queuectl;
 
 public class Main {
-    public static void main(String[] args) {
-        new CLI().start();
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            new CLI().start();
+        } else if (args[0].equals("daemon")) {
+            Daemon.run(args);
+        } else {
+            System.exit(DaemonClient.run(args));
+        }
     }
 }
@@ -0,0 +1,131 @@
+package com.queuectl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide queue metrics. Latencies are recorded in microseconds into histograms and
+ * events into striped counters, so instrumenting the hot paths costs a few atomic adds.
+ */
+public final class Metrics {
+    /** Enqueue (or retry due time) to the moment a worker starts the job. */
+    public static final Histogram QUEUE_WAIT = new Histogram();
+    /** One claimBatch call. */
+    public static final Histogram CLAIM = new Histogram();
+    /** One updateJob call. */
+    public static final Histogram UPDATE = new Histogram();
+    /** Subprocess run time of one attempt. */
+    public static final Histogram EXECUTION = new Histogram();
+
+    public static final LongAdder CLAIMED = new LongAdder();
+    public static final LongAdder EMPTY_CLAIMS = new LongAdder();
+    public static final LongAdder COMPLETED = new LongAdder();
+    public static final LongAdder FAILED_ATTEMPTS = new LongAdder();
+    public static final LongAdder DEAD = new LongAdder();
+    public static final LongAdder TIMEOUTS = new LongAdder();
+
+    private static final long STARTED = System.nanoTime();
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    public static long micros(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    /** Jobs finished (completed or dead) per second since startup. */
+    public static double throughput() {
+        double seconds = (System.nanoTime() - STARTED) / 1e9;
+        return seconds <= 0 ? 0 : (COMPLETED.sum() + DEAD.sum()) / seconds;
+    }
+
+    /** Database time (claims plus updates) per finished job, in microseconds. */
+    public static double dbMicrosPerJob() {
+        long finished = COMPLETED.sum() + DEAD.sum();
+        return finished == 0 ? 0 : (double) (CLAIM.sum() + UPDATE.sum()) / finished;
+    }
+
+    public static String summary() {
+        return String.format("""
+                Throughput: %.1f jobs/sec  completed=%d dead=%d failedAttempts=%d timeouts=%d
+                Claims: jobs=%d empty=%d  DB time/job: %.0fus
+                %s
+                %s
+                %s
+                %s""",
+                throughput(), COMPLETED.sum(), DEAD.sum(), FAILED_ATTEMPTS.sum(), TIMEOUTS.sum(),
+                CLAIMED.sum(), EMPTY_CLAIMS.sum(), dbMicrosPerJob(),
+                line("queue wait", QUEUE_WAIT), line("claim", CLAIM),
+                line("update", UPDATE), line("execution", EXECUTION));
+    }
+
+    /** Metrics in the Prometheus text exposition format. */
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder();
+        counter(sb, "queuectl_jobs_claimed_total", CLAIMED.sum());
+        counter(sb, "queuectl_empty_claims_total", EMPTY_CLAIMS.sum());
+        counter(sb, "queuectl_jobs_completed_total", COMPLETED.sum());
+        counter(sb, "queuectl_jobs_dead_total", DEAD.sum());
+        counter(sb, "queuectl_failed_attempts_total", FAILED_ATTEMPTS.sum());
+        counter(sb, "queuectl_timeouts_total", TIMEOUTS.sum());
+        sb.append("# TYPE queuectl_throughput_jobs_per_second gauge\n")
+          .append("queuectl_throughput_jobs_per_second ").append(throughput()).append('\n');
+        summary(sb, "queuectl_queue_wait_seconds", QUEUE_WAIT);
+        summary(sb, "queuectl_claim_seconds", CLAIM);
+        summary(sb, "queuectl_update_seconds", UPDATE);
+        summary(sb, "queuectl_execution_seconds", EXECUTION);
+        return sb.toString();
+    }
+
+    /** Rewrite {@code file} with the Prometheus text every {@code seconds}. */
+    public static synchronized void startDump(Path file, int seconds) {
+        if (dumper != null || seconds <= 0) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "queuectl-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleWithFixedDelay(() -> {
+            try {
+                // write then rename so a scraper never reads a half-written file
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(tmp, prometheus(), StandardCharsets.UTF_8);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, 0, seconds, TimeUnit.SECONDS);
+    }
+
+    private static String line(String name, Histogram h) {
+        return String.format("%-11s n=%d p50=%s p99=%s max=%s", name + ":", h.count(),
+                format(h.percentile(0.5)), format(h.percentile(0.99)), format(h.percentile(1.0)));
+    }
+
+    private static String format(long micros) {
+        if (micros < 1000) return micros + "us";
+        if (micros < 1_000_000) return String.format("%.1fms", micros / 1000.0);
+        return String.format("%.2fs", micros / 1e6);
+    }
+
+    private static void counter(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder sb, String name, Histogram h) {
+        sb.append("# TYPE ").append(name).append(" summary\n");
+        for (double q : new double[] {0.5, 0.9, 0.99}) {
+            sb.append(name).append("{quantile=\"").append(q).append("\"} ").append(h.percentile(q) / 1e6).append('\n');
+        }
+        sb.append(name).append("_sum ").append(h.sum() / 1e6).append('\n');
+        sb.append(name).append("_count ").append(h.count()).append('\n');
+    }
+}
@@ -0,0 +1,152 @@
+package com.queuectl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares worker capacity between named queues. Each queue has its own {@link ClaimBuffer}
+ * and a weight from {@code queueWeights} (e.g. {@code urgent:5,default:1}; unlisted queues
+ * get 1). Queues are picked by smooth weighted round-robin, so while every queue has work
+ * each gets its weighted share of job starts, interleaved rather than in bursts, and a
+ * backlog in one queue never delays the next start of another for more than one round.
+ *
+ * A queue that came back empty is skipped until a new job is signalled or
+ * {@code queueRecheckMs} passes, so idle queues do not cost a claim query per pick.
+ *
+ * Queues that {@link JobLimits} can affect are not prefetched: each job is claimed when a
+ * worker asks for it, skipping command prefixes that are at their limit, and only handed
+ * out once the limits grant it a slot. Workers report finished jobs through {@link #done(Job)}.
+ */
+public class QueueScheduler {
+    private final JobStorage storage;
+    private final JobLimits limits;
+    private final Map<String, Integer> weights;
+    private final int batchSize;
+    private final int lowWater;
+    private final long recheckMs;
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private long refreshedGeneration = -1;
+    private long refreshedAt;
+
+    public QueueScheduler(JobStorage storage, Config config, JobLimits limits, int batchSize, int lowWater) {
+        this.storage = storage;
+        this.limits = limits;
+        this.weights = parseWeights(config.get("queueWeights", ""));
+        this.batchSize = batchSize;
+        this.lowWater = lowWater;
+        this.recheckMs = config.getInt("queueRecheckMs", 100);
+    }
+
+    /** Next claimed job across all queues, or null if every queue is empty. */
+    public Job next() {
+        List<Lane> tried = new ArrayList<>(2);
+        Lane lane;
+        while ((lane = pick(tried)) != null) {
+            long seen = storage.signal().generation();
+            Job job = lane.buffer != null ? lane.buffer.next() : claimLimited(lane.queue);
+            if (job != null) return job;
+            lane.emptyGeneration = seen;
+            lane.emptyUntil = System.currentTimeMillis() + recheckMs;
+            tried.add(lane);
+        }
+        return null;
+    }
+
+    /** A job handed out by {@link #next()} has finished; frees its limit slots. */
+    public void done(Job job) {
+        // a freed slot may unblock a worker idling on a capped queue or prefix
+        if (limits.release(job)) storage.signal().signal(1);
+    }
+
+    private Job claimLimited(String queue) {
+        List<Job> claimed = storage.claimBatch(queue, 1, limits.blockedPrefixes());
+        if (claimed.isEmpty()) return null;
+        if (limits.tryAcquire(claimed.get(0))) return claimed.get(0);
+        // another worker took the last slot between the check and the claim
+        storage.releaseJobs(claimed);
+        return null;
+    }
+
+    /** Jobs claimed into the prefetch buffers and not yet handed to a worker. */
+    public int buffered() {
+        List<Lane> all;
+        synchronized (this) {
+            all = new ArrayList<>(lanes.values());
+        }
+        int jobs = 0;
+        for (Lane lane : all) {
+            if (lane.buffer != null) jobs += lane.buffer.size();
+        }
+        return jobs;
+    }
+
+    /** Give every buffered job back to its queue. */
+    public void drain() {
+        List<Lane> all;
+        synchronized (this) {
+            all = new ArrayList<>(lanes.values());
+        }
+        for (Lane lane : all) {
+            if (lane.buffer != null) lane.buffer.drain();
+        }
+    }
+
+    private synchronized Lane pick(List<Lane> tried) {
+        long now = System.currentTimeMillis();
+        long generation = storage.signal().generation();
+        // a new queue arrives with a signal (local enqueue) or a storage refresh (other processes)
+        if (generation != refreshedGeneration || now - refreshedAt > 1000) {
+            for (String queue : storage.queues()) {
+                lanes.computeIfAbsent(queue, q -> new Lane(q,
+                        limits.limits(q) ? null : new ClaimBuffer(storage, q, batchSize, lowWater),
+                        weights.getOrDefault(q, 1)));
+            }
+            refreshedGeneration = generation;
+            refreshedAt = now;
+        }
+        Lane best = null;
+        int total = 0;
+        for (Lane lane : lanes.values()) {
+            if (tried.contains(lane)) continue;
+            if (lane.emptyGeneration == generation && now < lane.emptyUntil) continue;
+            if (!limits.queueOpen(lane.queue)) continue;
+            lane.current += lane.weight;
+            total += lane.weight;
+            if (best == null || lane.current > best.current) best = lane;
+        }
+        if (best != null) best.current -= total;
+        return best;
+    }
+
+    private static Map<String, Integer> parseWeights(String spec) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] kv = entry.trim().split(":");
+            if (kv.length != 2) continue;
+            try {
+                weights.put(kv[0].trim(), Math.max(1, Integer.parseInt(kv[1].trim())));
+            } catch (NumberFormatException e) {
+                System.out.println("⚠️ Ignoring queue weight '" + entry + "'");
+            }
+        }
+        return weights;
+    }
+
+    private static class Lane {
+        final String queue;
+        /** Prefetch buffer; null when claims must pass the limits one job at a time. */
+        final ClaimBuffer buffer;
+        final int weight;
+        int current;
+        volatile long emptyGeneration = -1;
+        volatile long emptyUntil;
+
+        Lane(String queue, ClaimBuffer buffer, int weight) {
+            this.queue = queue;
+            this.buffer = buffer;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.queuectl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded in-memory LRU of job results in front of the storage engine's persisted results.
+ * Holds at most resultCacheEntries results and never returns one past its expiry, so a
+ * repeated idempotency key is usually answered without touching storage.
+ */
+public class ResultCache {
+    private final int maxEntries;
+    private final Map<String, JobResult> entries;
+
+    public ResultCache(Config config) {
+        this.maxEntries = Math.max(0, config.getInt("resultCacheEntries", 10000));
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JobResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /** The live result for {@code key}, or null if it is not cached (or has expired). */
+    public synchronized JobResult get(String key, long now) {
+        JobResult result = entries.get(key);
+        if (result != null && result.expired(now)) {
+            entries.remove(key);
+            return null;
+        }
+        return result;
+    }
+
+    public synchronized void put(JobResult result) {
+        if (maxEntries > 0 && !result.expired(System.currentTimeMillis())) entries.put(result.key, result);
+    }
+
+    /** Forget the result for {@code key}, e.g. because its job was requeued. */
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    /** Drop expired results; the rest stay in LRU order. */
+    public synchronized void purge(long now) {
+        for (Iterator<JobResult> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().expired(now)) it.remove();
+        }
+    }
+}
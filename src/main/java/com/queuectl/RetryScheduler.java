@@ -0,0 +1,59 @@
+package com.queuectl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Promotes failed jobs back to 'pending' once their persisted next_run_at has passed.
+ * The scheduler sleeps until the earliest due retry (or at most maxIdleMs, to pick up
+ * retries written by other processes) instead of parking worker threads in backoff.
+ * Because the due time lives in the database, pending retries survive a restart.
+ */
+public class RetryScheduler {
+    private final JobStorage storage;
+    private final long maxIdleMs;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "queuectl-retry-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> pending;
+    private long wakeAt = Long.MAX_VALUE;
+
+    public RetryScheduler(JobStorage storage, long maxIdleMs) {
+        this.storage = storage;
+        this.maxIdleMs = maxIdleMs;
+    }
+
+    public void start() {
+        schedule(System.currentTimeMillis());
+    }
+
+    /** Make sure the scheduler wakes up no later than {@code at} (epoch millis). */
+    public synchronized void retryAt(long at) {
+        if (at < wakeAt) schedule(at);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void promote() {
+        synchronized (this) {
+            wakeAt = Long.MAX_VALUE;
+        }
+        storage.promoteDueRetries();
+        long now = System.currentTimeMillis();
+        retryAt(Math.min(storage.nextRetryAt(), now + maxIdleMs));
+    }
+
+    private synchronized void schedule(long at) {
+        if (executor.isShutdown()) return;
+        if (pending != null) pending.cancel(false);
+        wakeAt = at;
+        long delay = Math.max(0, at - System.currentTimeMillis());
+        pending = executor.schedule(this::promote, delay, TimeUnit.MILLISECONDS);
+    }
+}
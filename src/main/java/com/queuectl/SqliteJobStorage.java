@@ -0,0 +1,948 @@
+package com.queuectl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The default storage engine: jobs live in a SQLite table shared by any number of
+ * queuectl processes, which coordinate through row leases.
+ */
+public class SqliteJobStorage implements JobStorage {
+    private static final String INSERT_COLUMNS = "jobs (id, command, state, attempts, maxRetries, next_run_at, created_at, updated_at, queue, priority, timeout_seconds, idempotency_key, cache_ttl, remaining_deps, finished_at, failure_reason, failure_detail) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String JOB_COLUMNS = "id, command, state, attempts, maxRetries, next_run_at, created_at, started_at, finished_at, updated_at, queue, priority, timeout_seconds, idempotency_key, cache_ttl, remaining_deps, failure_reason, failure_detail";
+    private static final String RESULT_COLUMNS = "idempotency_key, job_id, state, exit_code, output, finished_at, expires_at";
+
+    private static final String CLAIM = """
+        UPDATE jobs SET state='processing', started_at=?1, updated_at=?1, owner=?3, lease_expires_at=?4
+        WHERE id IN (%s)
+        RETURNING\s""" + JOB_COLUMNS;
+    private static final String CLAIM_ANY = CLAIM.formatted(
+            "SELECT id FROM jobs WHERE state='pending' AND next_run_at <= ?1 LIMIT ?2");
+    // the unary + keeps the planner off (state, next_run_at): that index would match more
+    // terms but cannot deliver priority order, so every claim would sort the whole backlog
+    private static final String CLAIM_QUEUE_WHERE = "SELECT id FROM jobs WHERE queue=?5 AND state='pending' AND +next_run_at <= ?1";
+    private static final String CLAIM_QUEUE_ORDER = " ORDER BY priority DESC, created_at LIMIT ?2";
+    private static final String CLAIM_QUEUE = CLAIM.formatted(CLAIM_QUEUE_WHERE + CLAIM_QUEUE_ORDER);
+
+    // one parent fewer to wait for; the last one makes the job claimable
+    private static final String RELEASE_DEPENDENTS = """
+        UPDATE jobs SET remaining_deps=remaining_deps-1, updated_at=?2,
+            state=CASE WHEN remaining_deps<=1 THEN 'pending' ELSE state END
+        WHERE state='blocked' AND id IN (SELECT child_id FROM job_deps WHERE parent_id=?1)
+        RETURNING state""";
+    // every blocked job downstream of a dead one
+    private static final String CASCADE_DEAD = """
+        WITH RECURSIVE doomed(id) AS (
+            SELECT d.child_id FROM job_deps d JOIN jobs j ON j.id=d.child_id WHERE d.parent_id=?1 AND j.state='blocked'
+            UNION
+            SELECT d.child_id FROM job_deps d JOIN doomed ON d.parent_id=doomed.id JOIN jobs j ON j.id=d.child_id WHERE j.state='blocked'
+        )
+        UPDATE jobs SET state='dead', finished_at=?2, updated_at=?2, failure_reason='dependency', failure_detail=?3
+        WHERE state='blocked' AND id IN (SELECT id FROM doomed)""";
+
+    private static final Comparator<Job> CLAIM_ORDER = Comparator.<Job>comparingInt(j -> -j.priority)
+            .thenComparing(j -> j.createdAt, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final ConnectionPool pool;
+    private final JobSignal signal = new JobSignal();
+    private final StateCounters counters = new StateCounters();
+    private final ResultCache resultCache;
+    private final int resultTtlSeconds;
+    // identifies this process's claims; the random suffix keeps a reused pid from
+    // adopting the leases of a crashed predecessor
+    private final String owner = ProcessHandle.current().pid() + "@" + hostName()
+            + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000));
+    private final long leaseMs;
+    // queue names seen by this process; new ones are also recorded in the queues table
+    private final Set<String> queues = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "queuectl-storage-maintenance");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SqliteJobStorage(Config config) {
+        try {
+            pool = new ConnectionPool(config);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot open job database: " + e.getMessage(), e);
+        }
+        try (PooledConnection c = pool.acquire();
+             Statement stmt = c.connection().createStatement()) {
+            // takes effect only while the file has no tables, i.e. for new databases;
+            // older ones are converted below
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS jobs (
+                    id TEXT PRIMARY KEY,
+                    command TEXT,
+                    state TEXT,
+                    attempts INTEGER,
+                    maxRetries INTEGER
+                )
+            """);
+            ensureColumn(stmt, "next_run_at", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "created_at", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "started_at", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "finished_at", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "updated_at", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "owner", "TEXT");
+            ensureColumn(stmt, "lease_expires_at", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "queue", "TEXT NOT NULL DEFAULT 'default'");
+            ensureColumn(stmt, "priority", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "timeout_seconds", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "idempotency_key", "TEXT");
+            ensureColumn(stmt, "cache_ttl", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "remaining_deps", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumn(stmt, "failure_reason", "TEXT");
+            ensureColumn(stmt, "failure_detail", "TEXT");
+            stmt.execute("CREATE TABLE IF NOT EXISTS queues (name TEXT PRIMARY KEY)");
+            stmt.execute("INSERT OR IGNORE INTO queues (name) VALUES ('default')");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_state_next_run ON jobs(state, next_run_at)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_state_id ON jobs(state, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_state_finished ON jobs(state, finished_at)");
+            // per-queue claims walk this in priority order and stop after LIMIT rows
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_queue_claim ON jobs(queue, state, priority DESC, created_at)");
+            // the DLQ by failure reason, in id order for paging; live jobs cost nothing here
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_dead_reason ON jobs(failure_reason, id) WHERE state='dead'");
+            // partial: jobs without a key cost nothing here
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_jobs_idempotency ON jobs(idempotency_key) WHERE idempotency_key IS NOT NULL");
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS results (
+                    idempotency_key TEXT PRIMARY KEY,
+                    job_id TEXT NOT NULL,
+                    state TEXT NOT NULL,
+                    exit_code INTEGER NOT NULL,
+                    output TEXT,
+                    finished_at INTEGER NOT NULL,
+                    expires_at INTEGER NOT NULL
+                )
+            """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_results_expires ON results(expires_at)");
+            // an edge per parent that had not completed when the child was enqueued
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS job_deps (
+                    parent_id TEXT NOT NULL,
+                    child_id TEXT NOT NULL,
+                    PRIMARY KEY (parent_id, child_id)
+                ) WITHOUT ROWID
+            """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_job_deps_child ON job_deps(child_id)");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        convertToIncrementalVacuum();
+        counters.reset(countByState());
+        refreshQueues();
+        resultCache = new ResultCache(config);
+        resultTtlSeconds = config.getInt("resultTtlSeconds", 3600);
+        int leaseSeconds = Math.max(3, config.getInt("leaseSeconds", 30));
+        leaseMs = leaseSeconds * 1000L;
+        // renew well before expiry so one missed beat does not cost the lease
+        long beat = leaseMs / 3;
+        maintenance.scheduleWithFixedDelay(() -> {
+            renewLeases();
+            reapExpiredLeases();
+            refreshQueues();
+        }, 0, beat, TimeUnit.MILLISECONDS);
+        int reconcile = config.getInt("statusReconcileSeconds", 30);
+        if (reconcile > 0) {
+            maintenance.scheduleWithFixedDelay(() -> counters.reset(countByState()), reconcile, reconcile, TimeUnit.SECONDS);
+        }
+        maintenance.scheduleWithFixedDelay(this::purgeResults, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * A repeated key is usually answered from the result cache without a transaction. Otherwise
+     * the key check runs inside the insert's write transaction, which is serialized with every
+     * other writer, including other processes.
+     */
+    @Override
+    public EnqueueResult addJob(Job job) {
+        if (job.idempotencyKey != null) {
+            JobResult cached = resultCache.get(job.idempotencyKey, System.currentTimeMillis());
+            if (cached != null) return EnqueueResult.cached(cached);
+        }
+        try (PooledConnection c = pool.acquire()) {
+            c.begin();
+            EnqueueResult outcome = insert(c, job);
+            if (outcome.isNew()) registerQueues(c, List.of(job));
+            c.commit();
+            if (outcome.isNew()) {
+                job.storedState = job.state;
+                counters.add(job.state, 1);
+                signal.signal(1);
+            }
+            return outcome;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return EnqueueResult.failed(job.id);
+        }
+    }
+
+    /**
+     * Inserts the whole batch in a single transaction using a JDBC batch. Batches with
+     * idempotency keys or dependencies are inserted row by row, so later rows see the keys
+     * of earlier ones and can depend on them.
+     */
+    @Override
+    public boolean[] addJobs(List<Job> jobs) {
+        boolean[] inserted = new boolean[jobs.size()];
+        if (jobs.isEmpty()) return inserted;
+        try (PooledConnection c = pool.acquire()) {
+            c.begin();
+            int[] counts = new int[jobs.size()];
+            if (jobs.stream().anyMatch(j -> j.idempotencyKey != null || !j.dependsOn.isEmpty())) {
+                for (int i = 0; i < jobs.size(); i++) {
+                    counts[i] = insert(c, jobs.get(i)).isNew() ? 1 : 0;
+                }
+            } else {
+                PreparedStatement ps = c.prepare("INSERT OR IGNORE INTO " + INSERT_COLUMNS);
+                for (Job job : jobs) {
+                    bindInsert(ps, job);
+                    ps.addBatch();
+                }
+                counts = ps.executeBatch();
+            }
+            registerQueues(c, jobs);
+            c.commit();
+            int added = 0;
+            for (int i = 0; i < counts.length; i++) {
+                inserted[i] = counts[i] > 0;
+                if (inserted[i]) {
+                    Job job = jobs.get(i);
+                    job.storedState = job.state;
+                    counters.add(job.state, 1);
+                    added++;
+                }
+            }
+            signal.signal(added);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return inserted;
+    }
+
+    /**
+     * Insert one job in the caller's transaction unless its idempotency key or id is taken or
+     * a dependency is unknown. A job with dependencies is stored 'blocked' while any of them
+     * has not completed, with an edge to each of those, or 'dead' if one of them is dead.
+     */
+    private EnqueueResult insert(PooledConnection c, Job job) throws SQLException {
+        if (job.idempotencyKey != null) {
+            EnqueueResult taken = keyTaken(c, job.idempotencyKey);
+            if (taken != null) return taken;
+        }
+        List<String> waitingOn = new ArrayList<>();
+        if (!job.dependsOn.isEmpty()) {
+            String deadParent = null;
+            PreparedStatement ps = c.prepare("SELECT state FROM jobs WHERE id=?");
+            for (String parent : job.dependsOn) {
+                ps.setString(1, parent);
+                String state;
+                try (ResultSet rs = ps.executeQuery()) {
+                    state = rs.next() ? rs.getString(1) : null;
+                }
+                if (state == null) return EnqueueResult.unknownDependency(parent);
+                if (state.equals("completed")) continue;
+                waitingOn.add(parent);
+                if (state.equals("dead")) deadParent = parent;
+            }
+            job.remainingDeps = waitingOn.size();
+            if (deadParent != null) {
+                job.state = "dead";
+                job.finishedAt = LocalDateTime.now();
+                job.failureReason = "dependency";
+                job.failureDetail = JobStorage.dependencyDied(deadParent);
+            } else {
+                // decided afresh each time: a batch that rolled back may retry this job alone
+                job.state = waitingOn.isEmpty() ? "pending" : "blocked";
+                job.finishedAt = null;
+                job.failureReason = null;
+                job.failureDetail = null;
+            }
+        }
+        PreparedStatement ps = c.prepare("INSERT OR IGNORE INTO " + INSERT_COLUMNS);
+        bindInsert(ps, job);
+        if (ps.executeUpdate() != 1) return EnqueueResult.duplicateId(job.id);
+        if (!waitingOn.isEmpty()) {
+            PreparedStatement edge = c.prepare("INSERT OR IGNORE INTO job_deps (parent_id, child_id) VALUES (?,?)");
+            for (String parent : waitingOn) {
+                edge.setString(1, parent);
+                edge.setString(2, job.id);
+                edge.addBatch();
+            }
+            edge.executeBatch();
+        }
+        return EnqueueResult.enqueued(job.id);
+    }
+
+    /** How an enqueue with {@code key} is answered instead of inserting, or null if the key is free. */
+    private EnqueueResult keyTaken(PooledConnection c, String key) throws SQLException {
+        long now = System.currentTimeMillis();
+        JobResult result = resultCache.get(key, now);
+        if (result == null) {
+            PreparedStatement ps = c.prepare("SELECT " + RESULT_COLUMNS + " FROM results WHERE idempotency_key=? AND expires_at > ?");
+            ps.setString(1, key);
+            ps.setLong(2, now);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    result = readResult(rs);
+                    resultCache.put(result);
+                }
+            }
+        }
+        if (result != null) return EnqueueResult.cached(result);
+        PreparedStatement ps = c.prepare("SELECT id FROM jobs WHERE idempotency_key=? AND state IN ('pending', 'blocked', 'processing', 'failed') LIMIT 1");
+        ps.setString(1, key);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? EnqueueResult.attached(rs.getString(1)) : null;
+        }
+    }
+
+    /** Delete expired results from the table and the cache. */
+    private void purgeResults() {
+        long now = System.currentTimeMillis();
+        resultCache.purge(now);
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("DELETE FROM results WHERE expires_at <= ?");
+            ps.setLong(1, now);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void bindInsert(PreparedStatement ps, Job job) throws SQLException {
+        ps.setString(1, job.id);
+        ps.setString(2, job.command);
+        ps.setString(3, job.state);
+        ps.setInt(4, job.attempts);
+        ps.setInt(5, job.maxRetries);
+        ps.setLong(6, job.nextRunAt);
+        ps.setLong(7, JobStorage.toEpochMillis(job.createdAt));
+        ps.setLong(8, JobStorage.toEpochMillis(job.updatedAt));
+        ps.setString(9, job.queue);
+        ps.setInt(10, job.priority);
+        ps.setInt(11, job.timeoutSeconds);
+        ps.setString(12, job.idempotencyKey);
+        ps.setInt(13, job.cacheTtlSeconds);
+        ps.setInt(14, job.remainingDeps);
+        ps.setLong(15, JobStorage.toEpochMillis(job.finishedAt));
+        ps.setString(16, job.failureReason);
+        ps.setString(17, job.failureDetail);
+    }
+
+    /** Record queue names not seen before, so every process's scheduler learns about them. */
+    private void registerQueues(PooledConnection c, List<Job> jobs) throws SQLException {
+        for (Job job : jobs) {
+            if (queues.contains(job.queue)) continue;
+            PreparedStatement ps = c.prepare("INSERT OR IGNORE INTO queues (name) VALUES (?)");
+            ps.setString(1, job.queue);
+            ps.executeUpdate();
+            queues.add(job.queue);
+        }
+    }
+
+    private void refreshQueues() {
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("SELECT name FROM queues");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    queues.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Served from memory; queues created by other processes show up within one heartbeat (leaseSeconds / 3). */
+    @Override
+    public Set<String> queues() {
+        return Collections.unmodifiableSet(queues);
+    }
+
+    @Override
+    public JobSignal signal() {
+        return signal;
+    }
+
+    /**
+     * A single UPDATE ... RETURNING does the select and the claim in one step, so two
+     * workers can never claim the same row and a lost race never yields an empty result
+     * while other pending rows remain. Each claimed row records this process as its owner
+     * and carries a lease that the heartbeat keeps renewing until the job is finished.
+     * Per-queue claims walk the (queue, state, priority, created_at) index.
+     */
+    @Override
+    public List<Job> claimBatch(String queue, int n, List<String> skipPrefixes) {
+        List<Job> jobs = new ArrayList<>(n);
+        if (n <= 0) return jobs;
+        long start = System.nanoTime();
+        try (PooledConnection c = pool.acquire()) {
+            c.begin();
+            String sql = queue == null ? CLAIM_ANY : CLAIM_QUEUE;
+            if (queue != null && !skipPrefixes.isEmpty()) {
+                StringBuilder where = new StringBuilder(CLAIM_QUEUE_WHERE);
+                for (int i = 0; i < skipPrefixes.size(); i++) {
+                    where.append(" AND command NOT LIKE ?").append(6 + i).append(" ESCAPE '\\'");
+                }
+                sql = CLAIM.formatted(where + CLAIM_QUEUE_ORDER);
+            }
+            PreparedStatement ps = c.prepare(sql);
+            ps.setLong(1, System.currentTimeMillis());
+            ps.setInt(2, n);
+            ps.setString(3, owner);
+            ps.setLong(4, System.currentTimeMillis() + leaseMs);
+            if (queue != null) {
+                ps.setString(5, queue);
+                for (int i = 0; i < skipPrefixes.size(); i++) {
+                    ps.setString(6 + i, likePrefix(skipPrefixes.get(i)));
+                }
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    jobs.add(readJob(rs));
+                }
+            }
+            // RETURNING yields rows in update (rowid) order, not the subquery's ORDER BY
+            if (queue != null) jobs.sort(CLAIM_ORDER);
+            c.commit();
+            counters.move("pending", "processing", jobs.size());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            jobs.clear();
+        }
+        Metrics.CLAIM.record(Metrics.micros(start));
+        Metrics.CLAIMED.add(jobs.size());
+        if (jobs.isEmpty()) Metrics.EMPTY_CLAIMS.increment();
+        return jobs;
+    }
+
+    @Override
+    public void releaseJobs(List<Job> jobs) {
+        if (jobs.isEmpty()) return;
+        try (PooledConnection c = pool.acquire()) {
+            c.begin();
+            PreparedStatement ps = c.prepare("UPDATE jobs SET state='pending', owner=NULL, lease_expires_at=0 WHERE id=? AND state='processing' AND owner=?");
+            for (Job job : jobs) {
+                ps.setString(1, job.id);
+                ps.setString(2, owner);
+                ps.addBatch();
+            }
+            int released = 0;
+            for (int n : ps.executeBatch()) {
+                released += Math.max(0, n);
+            }
+            c.commit();
+            counters.move("processing", "pending", released);
+            signal.signal(released);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Extend the lease of every job this process is running with a single UPDATE. The
+     * filter is served by the (state, id) index, so it only visits 'processing' rows.
+     */
+    @Override
+    public int renewLeases() {
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("UPDATE jobs SET lease_expires_at=? WHERE state='processing' AND owner=?");
+            ps.setLong(1, System.currentTimeMillis() + leaseMs);
+            ps.setString(2, owner);
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Return 'processing' jobs whose lease has run out to 'pending'. Their owner stopped
+     * heartbeating (the process died or hung), so the attempt is handed to another worker;
+     * the attempt count is left alone because the job itself did not fail.
+     */
+    @Override
+    public int reapExpiredLeases() {
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("UPDATE jobs SET state='pending', owner=NULL, lease_expires_at=0 WHERE state='processing' AND lease_expires_at < ?");
+            ps.setLong(1, System.currentTimeMillis());
+            int reaped = ps.executeUpdate();
+            if (reaped > 0) {
+                System.out.println("⚠️ Requeued " + reaped + " job(s) whose worker lease expired.");
+                counters.move("processing", "pending", reaped);
+                signal.signal(reaped);
+            }
+            return reaped;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    @Override
+    public String owner() {
+        return owner;
+    }
+
+    @Override
+    public Job getJob(String id) {
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("SELECT " + JOB_COLUMNS + " FROM jobs WHERE id=?");
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readJob(rs) : null;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Rows are streamed as they are read, without collecting them, so memory use does not
+     * depend on table size. Paging is keyset-based on the (state, id) index.
+     * The consumer runs while a pooled connection is held and must not call back into storage.
+     */
+    @Override
+    public String forEachJob(JobFilter filter, Consumer<Job> consumer) {
+        StringBuilder sql = new StringBuilder("SELECT " + JOB_COLUMNS + " FROM jobs WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        if (filter.state != null) { sql.append(" AND state=?"); params.add(filter.state); }
+        if (filter.queue != null) { sql.append(" AND queue=?"); params.add(filter.queue); }
+        if (filter.afterId != null) { sql.append(" AND id>?"); params.add(filter.afterId); }
+        if (filter.since > 0) { sql.append(" AND created_at>=?"); params.add(filter.since); }
+        if (filter.commandPrefix != null) {
+            sql.append(" AND command LIKE ? ESCAPE '\\'");
+            params.add(likePrefix(filter.commandPrefix));
+        }
+        if (filter.finishedSince > 0) { sql.append(" AND finished_at>=?"); params.add(filter.finishedSince); }
+        if (filter.failureReason != null) {
+            if (filter.failureReason.contains(":")) {
+                sql.append(" AND failure_reason=?");
+                params.add(filter.failureReason);
+            } else {
+                // "exit" and every "exit:<code>": ':' sorts just below ';'
+                sql.append(" AND failure_reason>=? AND failure_reason<?");
+                params.add(filter.failureReason);
+                params.add(filter.failureReason + ";");
+            }
+        }
+        if (filter.match != null) {
+            sql.append(" AND (instr(command, ?) > 0 OR instr(failure_detail, ?) > 0)");
+            params.add(filter.match);
+            params.add(filter.match);
+        }
+        sql.append(" ORDER BY id");
+        if (filter.limit > 0) { sql.append(" LIMIT ?"); params.add(filter.limit); }
+
+        String last = null;
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Job job = readJob(rs);
+                    consumer.accept(job);
+                    last = job.id;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return last;
+    }
+
+    @Override
+    public boolean retryDLQJob(String id) {
+        return retryDLQJobs(List.of(id)) == 1;
+    }
+
+    /**
+     * A job with dependencies that have not all completed goes back to 'blocked' rather than
+     * 'pending'. The cached result of a requeued job is deleted in the same transaction, so its
+     * idempotency key attaches to the retry instead of answering with the dead result. Other
+     * processes may still answer from their in-memory copy until it expires.
+     */
+    @Override
+    public int retryDLQJobs(List<String> ids) {
+        int pending = 0;
+        int blocked = 0;
+        List<String> keys = new ArrayList<>();
+        try (PooledConnection c = pool.acquire()) {
+            c.begin();
+            PreparedStatement count = c.prepare("SELECT COUNT(*) FROM job_deps d JOIN jobs p ON p.id=d.parent_id WHERE d.child_id=? AND p.state<>'completed'");
+            PreparedStatement ps = c.prepare("""
+                UPDATE jobs SET state=?, remaining_deps=?, attempts=0, next_run_at=0 WHERE id=? AND state='dead'
+                RETURNING idempotency_key""");
+            PreparedStatement forget = c.prepare("DELETE FROM results WHERE idempotency_key=? AND job_id=?");
+            for (String id : ids) {
+                count.setString(1, id);
+                int remaining;
+                try (ResultSet rs = count.executeQuery()) {
+                    remaining = rs.next() ? rs.getInt(1) : 0;
+                }
+                ps.setString(1, remaining > 0 ? "blocked" : "pending");
+                ps.setInt(2, remaining);
+                ps.setString(3, id);
+                String key;
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) continue;
+                    key = rs.getString(1);
+                }
+                if (remaining > 0) blocked++; else pending++;
+                if (key != null) {
+                    forget.setString(1, key);
+                    forget.setString(2, id);
+                    forget.executeUpdate();
+                    keys.add(key);
+                }
+            }
+            c.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        keys.forEach(resultCache::remove);
+        counters.move("dead", "pending", pending);
+        counters.move("dead", "blocked", blocked);
+        signal.signal(pending);
+        return pending + blocked;
+    }
+
+    /**
+     * Move failed jobs whose backoff has elapsed back to 'pending'. Served by the
+     * (state, next_run_at) index, so it only touches rows that are actually due.
+     */
+    @Override
+    public int promoteDueRetries() {
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("UPDATE jobs SET state='pending' WHERE state='failed' AND next_run_at <= ?");
+            ps.setLong(1, System.currentTimeMillis());
+            int promoted = ps.executeUpdate();
+            counters.move("failed", "pending", promoted);
+            signal.signal(promoted);
+            return promoted;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    @Override
+    public long nextRetryAt() {
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("SELECT MIN(next_run_at) FROM jobs WHERE state='failed'");
+            try (ResultSet rs = ps.executeQuery()) {
+                long next = rs.next() ? rs.getLong(1) : 0;
+                return rs.wasNull() ? Long.MAX_VALUE : next;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A job this process read as 'processing' is leased, so the write only succeeds while this
+     * process still owns the row; once the reaper has cleared an expired lease, a late result
+     * from the attempt is rejected. Other jobs may also be written while unowned, as a CLI
+     * retry does. A job that finishes settles its dependents in the same transaction: on
+     * completion each blocked child's remaining_deps drops by one and the last parent makes it
+     * 'pending'; on death every blocked job downstream becomes 'dead'. A keyed job also has
+     * its result stored there.
+     */
+    @Override
+    public boolean updateJob(Job job) {
+        long start = System.nanoTime();
+        boolean updated = false;
+        job.updatedAt = LocalDateTime.now();
+        JobResult result = null;
+        boolean finished = job.state.equals("completed") || job.state.equals("dead");
+        if (finished) {
+            job.finishedAt = job.updatedAt;
+            result = JobResult.of(job, resultTtlSeconds);
+        }
+        int released = 0;
+        int doomed = 0;
+        try (PooledConnection c = pool.acquire()) {
+            if (finished) c.begin();
+            PreparedStatement ps = c.prepare("""
+                UPDATE jobs SET state=?, attempts=?, next_run_at=?, finished_at=?, updated_at=?, owner=?, lease_expires_at=?,
+                    failure_reason=?, failure_detail=?
+                WHERE id=? AND (owner=? OR owner IS NULL AND NOT ?)""");
+            boolean running = job.state.equals("processing");
+            ps.setString(1, job.state);
+            ps.setInt(2, job.attempts);
+            ps.setLong(3, job.nextRunAt);
+            ps.setLong(4, JobStorage.toEpochMillis(job.finishedAt));
+            ps.setLong(5, JobStorage.toEpochMillis(job.updatedAt));
+            ps.setString(6, running ? owner : null);
+            ps.setLong(7, running ? System.currentTimeMillis() + leaseMs : 0);
+            ps.setString(8, job.failureReason);
+            ps.setString(9, job.failureDetail);
+            ps.setString(10, job.id);
+            ps.setString(11, owner);
+            ps.setBoolean(12, "processing".equals(job.storedState));
+            updated = ps.executeUpdate() == 1;
+            if (updated && result != null) saveResult(c, result);
+            if (updated && job.state.equals("completed")) released = releaseDependents(c, job.id);
+            if (updated && job.state.equals("dead")) doomed = cascadeDead(c, job.id);
+            if (finished) c.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            updated = false;
+        }
+        if (updated) {
+            counters.move(job.storedState, job.state, 1);
+            job.storedState = job.state;
+            if (result != null) resultCache.put(result);
+            counters.move("blocked", "pending", released);
+            counters.move("blocked", "dead", doomed);
+            signal.signal(released);
+        }
+        Metrics.UPDATE.record(Metrics.micros(start));
+        return updated;
+    }
+
+    /**
+     * The batch is read and written to a segment without holding the write lock, then
+     * deleted by id in a short transaction. A row is only deleted if it is still in
+     * {@code state} with the finished_at that was archived, so a job retried in the meantime
+     * stays. A crash after the segment is on disk leaves the rows both archived and in the
+     * table, to be archived again by the next run, but never loses them. Their dependency
+     * edges go with them; a job retried while waiting on a dead parent dies when that parent
+     * is archived.
+     */
+    @Override
+    public int archiveFinished(String state, long finishedBefore, int limit, JobArchive archive) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        int removed = 0;
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement select = c.prepare("SELECT " + JOB_COLUMNS + " FROM jobs WHERE state=? AND finished_at < ? ORDER BY finished_at LIMIT ?");
+            select.setString(1, state);
+            select.setLong(2, finishedBefore);
+            select.setInt(3, limit);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    jobs.add(readJob(rs));
+                }
+            }
+            if (jobs.isEmpty()) return 0;
+            archive.append(jobs);
+
+            c.begin();
+            int doomed = 0;
+            PreparedStatement delete = c.prepare("DELETE FROM jobs WHERE id=? AND state=? AND finished_at=?");
+            PreparedStatement edges = c.prepare("DELETE FROM job_deps WHERE parent_id=?1 OR child_id=?1");
+            for (Job job : jobs) {
+                delete.setString(1, job.id);
+                delete.setString(2, state);
+                delete.setLong(3, JobStorage.toEpochMillis(job.finishedAt));
+                if (delete.executeUpdate() == 0) continue;
+                removed++;
+                if (state.equals("dead")) doomed += cascadeDead(c, job.id);
+                edges.setString(1, job.id);
+                edges.executeUpdate();
+            }
+            c.commit();
+            counters.add(state, -removed);
+            counters.move("blocked", "dead", doomed);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        return removed;
+    }
+
+    @Override
+    public long finishedCutoff(String state, int keep) {
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("SELECT finished_at FROM jobs WHERE state=? ORDER BY finished_at DESC LIMIT 1 OFFSET ?");
+            ps.setString(1, state);
+            ps.setInt(2, keep - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Returns free pages to the file system. Only frees pages once the database has been
+     * converted to incremental auto-vacuum, which happens when it is opened.
+     */
+    @Override
+    public void compact() {
+        try (PooledConnection c = pool.acquire();
+             Statement stmt = c.connection().createStatement()) {
+            stmt.execute("PRAGMA incremental_vacuum");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Give a database created before incremental auto-vacuum was enabled a one-time full
+     * VACUUM. It rewrites the whole file under the write lock, so it runs at open, before the
+     * maintenance tasks or any worker of this process use the database. If another process
+     * holds the lock, it is left for the next start.
+     */
+    private void convertToIncrementalVacuum() {
+        try (PooledConnection c = pool.acquire();
+             Statement stmt = c.connection().createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+                if (rs.next() && rs.getInt(1) == 2) return;
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM jobs)")) {
+                // an empty database converts instantly; only a real one is worth a word
+                if (rs.next() && rs.getBoolean(1)) {
+                    System.out.println("🧹 Converting the job database to incremental auto-vacuum (one-time VACUUM)...");
+                }
+            }
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+            stmt.execute("VACUUM");
+        } catch (SQLException e) {
+            System.out.println("⚠️ Could not convert the job database to incremental auto-vacuum: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exact per-state counts from a single GROUP BY. The (state, next_run_at) index has
+     * state as its leading column, so this is answered from the index alone.
+     */
+    @Override
+    public Map<String, Long> countByState() {
+        Map<String, Long> counts = new HashMap<>();
+        try (PooledConnection c = pool.acquire()) {
+            PreparedStatement ps = c.prepare("SELECT state, COUNT(*) FROM jobs GROUP BY state");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return counts;
+    }
+
+    /** Reconciled against the table every statusReconcileSeconds. */
+    @Override
+    public StateCounters counters() {
+        return counters;
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+        pool.close();
+    }
+
+    /** Count one completed parent off each blocked dependent of {@code id}; returns how many became pending. */
+    private static int releaseDependents(PooledConnection c, String id) throws SQLException {
+        PreparedStatement ps = c.prepare(RELEASE_DEPENDENTS);
+        ps.setString(1, id);
+        ps.setLong(2, System.currentTimeMillis());
+        int released = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                if (rs.getString(1).equals("pending")) released++;
+            }
+        }
+        return released;
+    }
+
+    /** Make every blocked job downstream of the dead job {@code id} dead too; returns how many. */
+    private static int cascadeDead(PooledConnection c, String id) throws SQLException {
+        PreparedStatement ps = c.prepare(CASCADE_DEAD);
+        ps.setString(1, id);
+        ps.setLong(2, System.currentTimeMillis());
+        ps.setString(3, JobStorage.dependencyDied(id));
+        return ps.executeUpdate();
+    }
+
+    private static void saveResult(PooledConnection c, JobResult result) throws SQLException {
+        PreparedStatement ps = c.prepare("INSERT OR REPLACE INTO results (" + RESULT_COLUMNS + ") VALUES (?,?,?,?,?,?,?)");
+        ps.setString(1, result.key);
+        ps.setString(2, result.jobId);
+        ps.setString(3, result.state);
+        ps.setInt(4, result.exitCode);
+        ps.setString(5, result.output);
+        ps.setLong(6, result.finishedAt);
+        ps.setLong(7, result.expiresAt);
+        ps.executeUpdate();
+    }
+
+    private static JobResult readResult(ResultSet rs) throws SQLException {
+        return new JobResult(rs.getString("idempotency_key"), rs.getString("job_id"), rs.getString("state"),
+                rs.getInt("exit_code"), rs.getString("output"), rs.getLong("finished_at"), rs.getLong("expires_at"));
+    }
+
+    /** LIKE pattern matching strings that start with {@code prefix}, for use with ESCAPE '\'. */
+    private static String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    private static Job readJob(ResultSet rs) throws SQLException {
+        Job job = new Job(rs.getString("id"), rs.getString("command"), rs.getInt("maxRetries"));
+        job.state = rs.getString("state");
+        job.attempts = rs.getInt("attempts");
+        job.nextRunAt = rs.getLong("next_run_at");
+        job.createdAt = JobStorage.toLocalDateTime(rs.getLong("created_at"));
+        job.startedAt = JobStorage.toLocalDateTime(rs.getLong("started_at"));
+        job.finishedAt = JobStorage.toLocalDateTime(rs.getLong("finished_at"));
+        job.updatedAt = JobStorage.toLocalDateTime(rs.getLong("updated_at"));
+        job.queue = rs.getString("queue");
+        job.priority = rs.getInt("priority");
+        job.timeoutSeconds = rs.getInt("timeout_seconds");
+        job.idempotencyKey = rs.getString("idempotency_key");
+        job.cacheTtlSeconds = rs.getInt("cache_ttl");
+        job.remainingDeps = rs.getInt("remaining_deps");
+        job.failureReason = rs.getString("failure_reason");
+        job.failureDetail = rs.getString("failure_detail");
+        job.storedState = job.state;
+        return job;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /** Add a column to a jobs table created by an older version, if it is missing. */
+    private static void ensureColumn(Statement stmt, String name, String definition) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(jobs)")) {
+            while (rs.next()) {
+                if (name.equals(rs.getString("name"))) return;
+            }
+        }
+        stmt.execute("ALTER TABLE jobs ADD COLUMN " + name + " " + definition);
+    }
+}
@@ -0,0 +1,49 @@
+package com.queuectl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-state job counts kept in memory and adjusted on every state change made through
+ * {@link JobStorage}. Changes made by other processes are picked up when the counts are
+ * reconciled against the database, so they may briefly lag behind it.
+ */
+public class StateCounters {
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public void add(String state, long n) {
+        if (state == null || n == 0) return;
+        counts.computeIfAbsent(state, k -> new LongAdder()).add(n);
+    }
+
+    public void move(String from, String to, long n) {
+        if (from != null && from.equals(to)) return;
+        add(from, -n);
+        add(to, n);
+    }
+
+    public long get(String state) {
+        LongAdder count = counts.get(state);
+        return count == null ? 0 : Math.max(0, count.sum());
+    }
+
+    /** Replace all counts with freshly queried ones. */
+    public void reset(Map<String, Long> actual) {
+        for (Map.Entry<String, LongAdder> e : counts.entrySet()) {
+            if (!actual.containsKey(e.getKey())) e.getValue().reset();
+        }
+        for (Map.Entry<String, Long> e : actual.entrySet()) {
+            LongAdder count = counts.computeIfAbsent(e.getKey(), k -> new LongAdder());
+            count.reset();
+            count.add(e.getValue());
+        }
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snap = new TreeMap<>();
+        counts.keySet().forEach(state -> snap.put(state, get(state)));
+        return snap;
+    }
+}
@@ -4,7 +4,10 @@ import java.util.List;
 
 public class TestRunner {
     public static void main(String[] args) throws InterruptedException {
-        JobStorage storage = new JobStorage();
+        Config config = new Config();
+        JobStorage storage = JobStorage.open(config);
+        JobLogs logs = new JobLogs(config);
+        JobCommands commands = new JobCommands(config);
 
         // Create a simple job that prints a message. On Windows this will be
         // executed via cmd.exe /c <command>, on *nix via /bin/sh -c <command>.
@@ -16,7 +19,7 @@ public class TestRunner {
         List<Job> pending = storage.getPendingJobs();
         System.out.println("Starting " + pending.size() + " worker(s)");
         for (Job j : pending) {
-            new Thread(new Worker(storage, j)).start();
+            new Thread(new Worker(storage, j, logs, commands)).start();
         }
 
         // Wait for the worker(s) to run.
@@ -1,97 +1,326 @@
 package com.queuectl;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Worker implements Runnable {
     private final JobStorage storage;
     private final Job job;
+    private final int baseBackoff;
+    private final RetryScheduler retries;
+    private final JobLogs logs;
+    private final JobCommands commands;
+    private final int timeoutSeconds;
+    // set once the attempt's outcome is recorded, so an abandoned async attempt that
+    // finishes later cannot overwrite the state written on shutdown
+    private final AtomicBoolean recorded = new AtomicBoolean();
+    private long startedNanos;
+    // the in-process attempt of a java: job, cancelled on timeout or shutdown
+    private volatile Future<?> handlerTask;
+    // the attempt's subprocess, killed if the attempt is abandoned
+    private volatile Process process;
 
-    public Worker(JobStorage storage, Job job) {
+    /**
+     * Default backoff, no retry scheduler and no timeout. {@code logs} and {@code commands}
+     * are shared between workers, as WorkerManager does.
+     */
+    public Worker(JobStorage storage, Job job, JobLogs logs, JobCommands commands) {
+        this(storage, job, 2, null, logs, commands, 0);
+    }
+
+    /** {@code defaultTimeoutSeconds} applies to jobs without their own timeout; 0 means none. */
+    public Worker(JobStorage storage, Job job, int baseBackoff, RetryScheduler retries, JobLogs logs,
+                  JobCommands commands, int defaultTimeoutSeconds) {
         this.storage = storage;
         this.job = job;
+        this.baseBackoff = baseBackoff;
+        this.retries = retries;
+        this.logs = logs;
+        this.commands = commands;
+        this.timeoutSeconds = job.timeoutSeconds > 0 ? job.timeoutSeconds : defaultTimeoutSeconds;
     }
 
+    /**
+     * Run a single attempt of the job. A failed attempt is written back as 'failed' with
+     * its next_run_at and the thread returns immediately; the RetryScheduler puts the job
+     * back in the queue once the backoff has elapsed. An attempt that outlives its timeout
+     * is killed and counted as failed.
+     */
     @Override
     public void run() {
-        // Use a loop to implement retries instead of recursion. This avoids
-        // stack growth and makes retry flow clearer.
-        while (true) {
-            job.state = "processing";
-            storage.updateJob(job);
-
-            try {
-                Process process;
-                if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                    // Windows
-                    process = new ProcessBuilder("cmd.exe", "/c", job.command)
-                            .redirectErrorStream(true)
-                            .start();
+        markProcessing();
+        if (JobCommands.isHandler(job.command)) {
+            runHandler();
+            return;
+        }
+        try {
+            Process process = startProcess();
+            if (timeoutSeconds <= 0) {
+                finish(process.waitFor());
+            } else if (process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                finish(process.exitValue());
+            } else {
+                kill(process);
+                timedOut();
+            }
+        } catch (IOException e) {
+            ioFailure(e);
+        } catch (InterruptedException e) {
+            // Restore interrupted status; the attempt did not fail so it is retried straight away
+            Thread.currentThread().interrupt();
+            abandon();
+        }
+    }
+
+    /**
+     * Start the attempt without blocking the calling thread. The outcome is recorded on
+     * {@code completions} when the process exits or its timeout expires.
+     */
+    public CompletableFuture<Void> runAsync(Executor completions) {
+        markProcessing();
+        if (JobCommands.isHandler(job.command)) {
+            CompletableFuture<Integer> result = startHandler();
+            if (timeoutSeconds > 0) result.orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+            return result.handleAsync((exitCode, error) -> {
+                if (error == null) {
+                    finish(exitCode);
+                } else if (error instanceof TimeoutException) {
+                    cancelHandler();
+                    timedOut();
                 } else {
-                    // Linux / macOS
-                    process = new ProcessBuilder("/bin/sh", "-c", job.command)
-                            .redirectErrorStream(true)
-                            .start();
+                    ioFailure(error);
                 }
+                return null;
+            }, completions);
+        }
+        Process process;
+        try {
+            process = startProcess();
+        } catch (IOException e) {
+            ioFailure(e);
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Process> exit = process.onExit();
+        if (timeoutSeconds > 0) exit = exit.orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        return exit.handleAsync((p, timeout) -> {
+            if (timeout == null) {
+                finish(p.exitValue());
+            } else {
+                kill(process);
+                timedOut();
+            }
+            return null;
+        }, completions);
+    }
 
-                // Capture output
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("  " + line);
-                    }
-                }
+    /**
+     * Give up on an attempt that is still running, e.g. when workers stop. Its process tree
+     * is killed before the job is handed back, so the retry cannot run alongside it.
+     */
+    public void abandon() {
+        cancelHandler();
+        if (!recorded.compareAndSet(false, true)) return;
+        Process running = process;
+        if (running != null) {
+            kill(running);
+            awaitExit(running);
+        }
+        job.state = "failed";
+        job.nextRunAt = System.currentTimeMillis();
+        System.out.println("⚠️ Job " + job.id + " interrupted. Marking as failed.");
+        save();
+    }
 
-                int exitCode = process.waitFor();
+    private void markProcessing() {
+        // jobs handed out by claimBatch are already 'processing'
+        if (!"processing".equals(job.state)) {
+            job.state = "processing";
+            save();
+        }
+        long readyAt = Math.max(JobStorage.toEpochMillis(job.createdAt), job.nextRunAt);
+        if (readyAt > 0) Metrics.QUEUE_WAIT.record((System.currentTimeMillis() - readyAt) * 1000);
+    }
 
-                if (exitCode == 0) {
-                    job.state = "completed";
-                    System.out.println("✅ Job " + job.id + " completed successfully.");
-                    storage.updateJob(job);
-                    break; // done
-                } else {
-                    // failed attempt
-                    job.attempts++;
-                    if (job.attempts > job.maxRetries) {
-                        job.state = "dead";
-                        System.out.println("💀 Job " + job.id + " moved to DLQ after max retries.");
-                        storage.updateJob(job);
-                        break;
-                    } else {
-                        job.state = "failed";
-                        storage.updateJob(job);
-                        int delay = (int) Math.pow(2, job.attempts);
-                        System.out.println("⚠️ Job " + job.id + " failed. Retrying in " + delay + " seconds...");
-                        try { Thread.sleep(delay * 1000L); } catch (InterruptedException ignored) {}
-                        // loop to retry
-                    }
+    /**
+     * Start the command with stdout and stderr appended to the job's log file by the OS. If the
+     * attempt was abandoned while the process was starting, it is killed at once; abandon()
+     * had no process to kill, and the job may already be running elsewhere.
+     */
+    private Process startProcess() throws IOException {
+        startedNanos = System.nanoTime();
+        process = processBuilder()
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(logs.prepare(job)))
+                .start();
+        if (recorded.get()) kill(process);
+        return process;
+    }
+
+    private ProcessBuilder processBuilder() {
+        return commands.processBuilder(job.command);
+    }
+
+    /** Run a {@code java:} job's handler, waiting at most the timeout for it. */
+    private void runHandler() {
+        CompletableFuture<Integer> result = startHandler();
+        try {
+            finish(timeoutSeconds <= 0 ? result.get() : result.get(timeoutSeconds, TimeUnit.SECONDS));
+        } catch (TimeoutException e) {
+            cancelHandler();
+            timedOut();
+        } catch (ExecutionException e) {
+            ioFailure(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon();
+        }
+    }
+
+    /**
+     * Start the handler on the handler pool with its output appended to the job's log. The
+     * result is the handler's exit code: 127 for an unknown handler and 1 if it threw. It
+     * completes exceptionally only if the log cannot be opened.
+     */
+    private CompletableFuture<Integer> startHandler() {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        startedNanos = System.nanoTime();
+        File log;
+        try {
+            log = logs.prepare(job);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        JobHandler handler = commands.handler(job.command);
+        handlerTask = commands.handlerPool().submit(() -> {
+            try (PrintStream out = new PrintStream(new FileOutputStream(log, true), false, StandardCharsets.UTF_8)) {
+                if (handler == null) {
+                    out.println("No job handler named '" + JobCommands.handlerName(job.command) + "'");
+                    result.complete(127);
+                    return;
                 }
-            } catch (IOException e) {
-                // treat IO errors as a failed attempt
-                job.attempts++;
-                if (job.attempts > job.maxRetries) {
-                    job.state = "dead";
-                    System.out.println("💀 Job " + job.id + " moved to DLQ after max retries (IO error).");
-                    storage.updateJob(job);
-                    break;
-                } else {
-                    job.state = "failed";
-                    storage.updateJob(job);
-                    int delay = (int) Math.pow(2, job.attempts);
-                    System.out.println("⚠️ Job " + job.id + " encountered IO error. Retrying in " + delay + " seconds...");
-                    try { Thread.sleep(delay * 1000L); } catch (InterruptedException ignored) {}
-                    // loop to retry
+                try {
+                    result.complete(handler.run(job, JobCommands.handlerArgs(job.command), out));
+                } catch (InterruptedException e) {
+                    // cancelled after a timeout or on shutdown, which is recorded by the canceller
+                    result.complete(130);
+                } catch (Exception e) {
+                    e.printStackTrace(out);
+                    result.complete(1);
                 }
-            } catch (InterruptedException e) {
-                // Restore interrupted status and stop retrying
-                Thread.currentThread().interrupt();
-                job.state = "failed";
-                System.out.println("⚠️ Job " + job.id + " interrupted. Marking as failed.");
-                storage.updateJob(job);
-                break;
+            } catch (IOException e) {
+                result.completeExceptionally(e);
             }
+        });
+        // abandoned while submitting: abandon() found no task to cancel
+        if (recorded.get()) cancelHandler();
+        return result;
+    }
+
+    private void cancelHandler() {
+        Future<?> task = handlerTask;
+        if (task != null) task.cancel(true);
+    }
+
+    private void finish(int exitCode) {
+        if (!recorded.compareAndSet(false, true)) return;
+        Metrics.EXECUTION.record(Metrics.micros(startedNanos));
+        job.exitCode = exitCode;
+        job.output = logs.captureTail(job.id);
+        if (exitCode == 0) {
+            Metrics.COMPLETED.increment();
+            job.state = "completed";
+            job.failureReason = null;
+            job.failureDetail = null;
+            System.out.println("✅ Job " + job.id + " completed successfully.");
+            save();
+        } else {
+            // failed attempt
+            job.failureReason = "exit:" + exitCode;
+            job.failureDetail = JobLogs.lastAttempt(job.output);
+            fail("💀 Job " + job.id + " moved to DLQ after max retries.",
+                 "⚠️ Job " + job.id + " failed. Retrying in %d seconds...");
+        }
+    }
+
+    /** Write the job back, warning if its lease expired and another worker took it over. */
+    private void save() {
+        if (!storage.updateJob(job)) {
+            System.out.println("⚠️ Job " + job.id + " lease was lost; this attempt's result was discarded.");
+        }
+    }
+
+    /** Kill the attempt's whole process tree. */
+    private static void kill(Process process) {
+        // list the tree before killing the shell; its children are re-parented once it dies
+        List<ProcessHandle> tree = process.descendants().toList();
+        process.destroyForcibly();
+        tree.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /** Wait a few seconds for a killed process to exit, even if this thread was interrupted. */
+    private static void awaitExit(Process process) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            process.waitFor(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Count an attempt that ran out of time, already killed or cancelled, as failed. */
+    private void timedOut() {
+        if (!recorded.compareAndSet(false, true)) return;
+        Metrics.EXECUTION.record(Metrics.micros(startedNanos));
+        Metrics.TIMEOUTS.increment();
+        // 124, as reported by timeout(1)
+        job.exitCode = 124;
+        job.output = logs.captureTail(job.id);
+        job.failureReason = "timeout";
+        job.failureDetail = JobLogs.lastAttempt(job.output);
+        fail("💀 Job " + job.id + " timed out after " + timeoutSeconds + "s and moved to DLQ.",
+             "⚠️ Job " + job.id + " timed out after " + timeoutSeconds + "s. Retrying in %d seconds...");
+    }
+
+    private void ioFailure(Throwable error) {
+        if (!recorded.compareAndSet(false, true)) return;
+        // treat IO errors as a failed attempt; 126 is the shell's "cannot execute"
+        job.exitCode = 126;
+        job.output = "";
+        job.failureReason = "io";
+        job.failureDetail = String.valueOf(error);
+        fail("💀 Job " + job.id + " moved to DLQ after max retries (IO error).",
+             "⚠️ Job " + job.id + " encountered IO error. Retrying in %d seconds...");
+    }
+
+    private void fail(String deadMessage, String retryMessage) {
+        job.attempts++;
+        Metrics.FAILED_ATTEMPTS.increment();
+        if (job.attempts > job.maxRetries) {
+            Metrics.DEAD.increment();
+            job.state = "dead";
+            System.out.println(deadMessage);
+            save();
+        } else {
+            long delay = (long) Math.pow(baseBackoff, job.attempts);
+            job.state = "failed";
+            job.nextRunAt = System.currentTimeMillis() + delay * 1000L;
+            System.out.println(String.format(retryMessage, delay));
+            save();
+            if (retries != null) retries.retryAt(job.nextRunAt);
         }
     }
-}
\ No newline at end of file
+}
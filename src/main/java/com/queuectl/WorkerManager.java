@@ -1,46 +1,301 @@
 package com.queuectl;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class WorkerManager {
     private final JobStorage storage;
-    private final List<Thread> workers = new ArrayList<>();
+    private final Config config;
+    private final JobLogs logs;
+    private final JobCommands commands;
+    private final List<WorkerThread> workers = new ArrayList<>();
     private volatile boolean running = false;
+    private QueueScheduler queues;
+    private RetryScheduler retries;
+    private Autoscaler autoscaler;
+    private int capacity;
+    private int nextWorkerId;
+
+    // async ("virtual") mode: one dispatcher thread, subprocesses completed via onExit()
+    private Thread dispatcher;
+    private Semaphore slots;
+    private ExecutorService completions;
+    private final Set<Worker> inFlight = ConcurrentHashMap.newKeySet();
 
     public WorkerManager(JobStorage storage) {
+        this(storage, new Config());
+    }
+
+    public WorkerManager(JobStorage storage, Config config) {
         this.storage = storage;
+        this.config = config;
+        this.logs = new JobLogs(config);
+        this.commands = new JobCommands(config);
     }
 
+    /**
+     * Start {@code count} platform threads, each running one job at a time. Called again while
+     * threads are running, it resizes the pool to {@code count} and ends autoscaling.
+     */
     public synchronized void start(int count) {
-        if (running) return;
-        running = true;
+        if (running) {
+            if (dispatcher == null) {
+                stopAutoscaler();
+                resize(count);
+            }
+            return;
+        }
+        startThreads(count, count);
+    }
+
+    /**
+     * Start {@code min} platform threads and let an {@link Autoscaler} keep the pool between
+     * {@code min} and {@code max}. A running thread pool switches to autoscaling as it is.
+     */
+    public synchronized void startAuto(int min, int max) {
+        if (running && dispatcher != null) return;
+        if (running) {
+            resize(Math.max(min, Math.min(max, capacity)));
+        } else {
+            startThreads(min, max);
+        }
+        stopAutoscaler();
+        autoscaler = new Autoscaler(this, storage, config, min, max);
+        autoscaler.start();
+    }
+
+    /**
+     * Grow or shrink a running thread pool to {@code count} workers. Removed workers are idle
+     * ones where possible; a busy one finishes its current job before it exits, so no job is
+     * interrupted.
+     */
+    public synchronized void resize(int count) {
+        if (!running || dispatcher != null) return;
+        workers.removeIf(w -> !w.thread.isAlive());
+        List<WorkerThread> active = new ArrayList<>(workers.stream().filter(w -> !w.retiring).toList());
+        for (int i = active.size(); i < count; i++) {
+            addWorker();
+        }
+        // idle ones first, newest first within each
+        active.sort(Comparator.comparing((WorkerThread w) -> w.busy).thenComparing(w -> -w.id));
+        for (int i = 0; i < active.size() - count; i++) {
+            active.get(i).retiring = true;
+        }
+        capacity = count;
+    }
+
+    private void startThreads(int count, int maxCount) {
+        startShared(maxCount);
         for (int i = 0; i < count; i++) {
-            Thread t = new Thread(() -> {
-                while (running && !Thread.currentThread().isInterrupted()) {
-                    Job job = storage.claimNextPendingJob();
-                    if (job == null) {
-                        try { Thread.sleep(500); } catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
-                        continue;
-                    }
-                    // Process job in this thread
-                    new Worker(storage, job).run();
-                }
-            }, "queuectl-worker-" + i);
-            t.start();
-            workers.add(t);
+            addWorker();
         }
+        capacity = count;
+        retries.start();
+    }
+
+    private void addWorker() {
+        QueueScheduler claims = queues;
+        RetryScheduler scheduler = retries;
+        WorkerThread w = new WorkerThread(nextWorkerId++);
+        w.thread = new Thread(() -> {
+            IdleWait idle = new IdleWait();
+            while (running && !w.retiring && !Thread.currentThread().isInterrupted()) {
+                long seen = storage.signal().generation();
+                Job job = claims.next();
+                if (job == null) {
+                    if (!idle.await(seen)) break;
+                    continue;
+                }
+                idle.reset();
+                // Process job in this thread
+                w.busy = true;
+                newWorker(job, scheduler).run();
+                w.busy = false;
+                claims.done(job);
+            }
+        }, "queuectl-worker-" + w.id);
+        w.thread.start();
+        workers.add(w);
+    }
+
+    /**
+     * Run up to {@code concurrency} jobs at once without a thread per job. A single
+     * dispatcher starts subprocesses while a semaphore has free slots, and each job's
+     * outcome is recorded from {@link Process#onExit()} on a small completion pool, so
+     * a thousand concurrent I/O-bound jobs need a thousand child processes but only a
+     * handful of JVM threads.
+     */
+    public synchronized void startAsync(int concurrency) {
+        if (running) return;
+        startShared(concurrency);
+        slots = new Semaphore(concurrency);
+        completions = Executors.newFixedThreadPool(Math.min(concurrency, 4), r -> {
+            Thread t = new Thread(r, "queuectl-completion");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore free = slots;
+        ExecutorService done = completions;
+        QueueScheduler claims = queues;
+        RetryScheduler scheduler = retries;
+        dispatcher = new Thread(() -> {
+            IdleWait idle = new IdleWait();
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    free.acquire();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                long seen = storage.signal().generation();
+                Job job = claims.next();
+                if (job == null) {
+                    free.release();
+                    if (!idle.await(seen)) break;
+                    continue;
+                }
+                idle.reset();
+                Worker worker = newWorker(job, scheduler);
+                inFlight.add(worker);
+                worker.runAsync(done).whenComplete((r, e) -> {
+                    inFlight.remove(worker);
+                    claims.done(job);
+                    free.release();
+                });
+            }
+        }, "queuectl-dispatcher");
+        dispatcher.start();
+        retries.start();
     }
 
     public synchronized void stop() {
+        stopAutoscaler();
         running = false;
-        for (Thread t : workers) {
+        List<Thread> threads = new ArrayList<>();
+        workers.forEach(w -> threads.add(w.thread));
+        if (dispatcher != null) threads.add(dispatcher);
+        for (Thread t : threads) {
             t.interrupt();
         }
+        // let interrupted workers record their job's final state before storage is closed
+        for (Thread t : threads) {
+            try { t.join(5000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
+        }
         workers.clear();
+        dispatcher = null;
+        if (slots != null) {
+            // give running subprocesses a moment to finish, then kill the rest and hand them back for retry
+            try {
+                if (slots.tryAcquire(capacity, 5, TimeUnit.SECONDS)) slots.release(capacity);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.forEach(Worker::abandon);
+            inFlight.clear();
+            completions.shutdown();
+            slots = null;
+            completions = null;
+        }
+        if (retries != null) {
+            retries.stop();
+            retries = null;
+        }
+        if (queues != null) {
+            queues.drain();
+            queues = null;
+        }
+        capacity = 0;
     }
 
     public int activeWorkers() {
-        return workers.size();
+        return capacity;
+    }
+
+    /** Workers running a job right now. */
+    public synchronized int busyWorkers() {
+        if (dispatcher != null) return inFlight.size();
+        return (int) workers.stream().filter(w -> w.busy).count();
+    }
+
+    /** Jobs claimed ahead into the prefetch buffers, waiting for a free worker. */
+    public synchronized int bufferedJobs() {
+        return queues == null ? 0 : queues.buffered();
+    }
+
+    /** The controller resizing the pool, or null for a fixed-size pool. */
+    public synchronized Autoscaler autoscaler() {
+        return autoscaler;
+    }
+
+    public JobLogs logs() {
+        return logs;
+    }
+
+    public JobCommands commands() {
+        return commands;
+    }
+
+    private void stopAutoscaler() {
+        if (autoscaler != null) {
+            autoscaler.stop();
+            autoscaler = null;
+        }
+    }
+
+    private void startShared(int count) {
+        running = true;
+        capacity = count;
+        // per queue, prefetch a couple of jobs per worker and refill once only one round is left
+        queues = new QueueScheduler(storage, config, new JobLimits(config), config.getInt("claimBatchSize", Math.max(8, count * 2)), count);
+        retries = new RetryScheduler(storage, config.getInt("retryPollMs", 5000));
+        logs.startCleanup();
+    }
+
+    private Worker newWorker(Job job, RetryScheduler scheduler) {
+        return new Worker(storage, job, config.getInt("baseBackoff", 2), scheduler, logs, commands,
+                config.getInt("jobTimeoutSeconds", 0));
+    }
+
+    /** A thread-mode worker; once {@code retiring} is set it exits before claiming another job. */
+    private static final class WorkerThread {
+        final int id;
+        Thread thread;
+        volatile boolean busy;
+        volatile boolean retiring;
+
+        WorkerThread(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Idle wait between empty claims. Workers park on the storage signal; the timeout is only
+     * a fallback for jobs enqueued by other processes and doubles while the queue stays empty.
+     */
+    private class IdleWait {
+        private final long min = config.getInt("idleBackoffMinMs", 10);
+        private final long max = config.getInt("idleBackoffMaxMs", 1000);
+        private long current = min;
+
+        /** Returns false if the thread was interrupted and should exit. */
+        boolean await(long seenGeneration) {
+            try {
+                if (!storage.signal().await(seenGeneration, current)) current = Math.min(current * 2, max);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        void reset() {
+            current = min;
+        }
     }
 }
@@ -0,0 +1,359 @@
+package com.queuectl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log backing {@link LogJobStorage}. Records go into memory-mapped
+ * segment files ({@code wal-<seq>.log}), so an append is a memory copy and survives a crash
+ * of the JVM as soon as it returns; a flusher thread msyncs new data to disk every
+ * {@code flushMs}. In synchronous mode appenders wait for that msync instead, and every
+ * appender that arrived while one was in progress shares the next one (group commit).
+ *
+ * Each record is framed as {@code [length][crc32c][payload]} with the length written last,
+ * so replay stops cleanly at a torn tail. {@link #snapshot} writes the full state to
+ * {@code snapshot-<seq>.dat} and drops the segments it covers. The directory is locked, so
+ * only one process can own a log.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    private static final int HEADER = 8;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final boolean syncCommits;
+    private final long flushMs;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final long replayedBytes;
+
+    // appends are serialized on this object; the flusher only reads under it
+    private Segment current;
+    private volatile long appendedLsn;
+    private long bytesSinceSnapshot;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition work = flushLock.newCondition();
+    private final Condition flushed = flushLock.newCondition();
+    private volatile long flushedLsn;
+    private volatile boolean closed;
+    private final Thread flusher;
+    private final Object snapshotLock = new Object();
+
+    /**
+     * Open (or create) the log in {@code dir} and pass every record of the latest snapshot
+     * and the segments after it to {@code replay}, in order.
+     */
+    public WriteAheadLog(Path dir, int segmentBytes, boolean syncCommits, long flushMs, Consumer<ByteBuffer> replay) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.syncCommits = syncCommits;
+        this.flushMs = Math.max(1, flushMs);
+        Files.createDirectories(dir);
+        lockChannel = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock held;
+        try {
+            held = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            held = null;
+        }
+        if (held == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Job log " + dir + " is in use by another process");
+        }
+        lock = held;
+
+        long snapshotSeq = latest("snapshot-", ".dat");
+        long replayed = 0;
+        if (snapshotSeq >= 0) replayed += replaySnapshot(snapshotPath(snapshotSeq), replay);
+        long next = Math.max(snapshotSeq, 0);
+        for (long seq : sequences("wal-", ".log")) {
+            if (seq < next) {
+                // covered by the snapshot; left behind by a crash during cleanup
+                Files.deleteIfExists(segmentPath(seq));
+                continue;
+            }
+            replayed += replaySegment(segmentPath(seq), replay);
+            next = seq + 1;
+        }
+        replayedBytes = replayed;
+        current = openSegment(next, segmentBytes);
+
+        flusher = new Thread(this::flushLoop, "queuectl-wal-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** Bytes of snapshot and log read at startup; 0 for a new log. */
+    public long replayedBytes() {
+        return replayedBytes;
+    }
+
+    /** Log bytes written since the last snapshot. */
+    public synchronized long bytesSinceSnapshot() {
+        return bytesSinceSnapshot;
+    }
+
+    /**
+     * Append one record and return its log sequence number for {@link #awaitDurable(long)}.
+     * Callers that must keep the log in step with other state can hold this object's
+     * monitor around the change and the append.
+     */
+    public synchronized long append(byte[] payload) {
+        int size = HEADER + payload.length;
+        if (current.position + size > current.buffer.capacity()) {
+            rollover(size);
+        }
+        MappedByteBuffer buf = current.buffer;
+        int pos = current.position;
+        buf.putInt(pos + 4, crc(payload));
+        buf.put(pos + HEADER, payload);
+        // the length goes in last: until it is set, replay sees the end of the log here
+        buf.putInt(pos, payload.length);
+        current.position += size;
+        bytesSinceSnapshot += size;
+        appendedLsn += size;
+        return appendedLsn;
+    }
+
+    /** In synchronous mode, block until the record at {@code lsn} has been msynced. */
+    public void awaitDurable(long lsn) {
+        if (!syncCommits || flushedLsn >= lsn) return;
+        flushLock.lock();
+        try {
+            work.signal();
+            while (flushedLsn < lsn && !closed) {
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot of the full state and delete the log it replaces. Appends switch to a
+     * new segment first and carry on while {@code records} (read after the switch) are written.
+     * A record may then be in both the snapshot and the new segment, which is harmless because
+     * every record states a job's absolute value and replaying it twice gives the same result.
+     */
+    public void snapshot(Iterator<byte[]> records) throws IOException {
+        synchronized (snapshotLock) {
+            long seq;
+            synchronized (this) {
+                rollover(0);
+                seq = current.seq;
+                bytesSinceSnapshot = 0;
+            }
+            Path target = snapshotPath(seq);
+            Path tmp = dir.resolve(target.getFileName() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                while (records.hasNext()) {
+                    byte[] payload = records.next();
+                    out.writeInt(payload.length);
+                    out.writeInt(crc(payload));
+                    out.write(payload);
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            for (long old : sequences("wal-", ".log")) {
+                if (old < seq) Files.deleteIfExists(segmentPath(old));
+            }
+            for (long old : sequences("snapshot-", ".dat")) {
+                if (old < seq) Files.deleteIfExists(snapshotPath(old));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flushLock.lock();
+        try {
+            work.signalAll();
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            current.buffer.force();
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            flushLock.lock();
+            try {
+                if (appendedLsn == flushedLsn) {
+                    work.await(flushMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                flushLock.unlock();
+            }
+            flush();
+        }
+    }
+
+    private void flush() {
+        Segment seg;
+        int to;
+        long target;
+        synchronized (this) {
+            seg = current;
+            to = seg.position;
+            target = appendedLsn;
+        }
+        if (target == flushedLsn) return;
+        if (to > seg.forced) {
+            seg.buffer.force(seg.forced, to - seg.forced);
+            seg.forced = to;
+        }
+        flushLock.lock();
+        try {
+            flushedLsn = target;
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** Start a new segment; the old one is forced to disk in full first. Caller holds this monitor. */
+    private void rollover(int minBytes) {
+        current.buffer.force();
+        try {
+            current = openSegment(current.seq + 1, Math.max(segmentBytes, minBytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create job log segment: " + e.getMessage(), e);
+        }
+    }
+
+    private Segment openSegment(long seq, int size) throws IOException {
+        try (FileChannel ch = FileChannel.open(segmentPath(seq),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // mapping past the end grows the (sparse) file; the mapping outlives the channel
+            return new Segment(seq, ch.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private long replaySegment(Path path, Consumer<ByteBuffer> replay) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        int pos = 0;
+        while (pos + HEADER <= buf.limit()) {
+            int length = buf.getInt(pos);
+            if (length <= 0 || pos + HEADER + length > buf.limit()) break;
+            byte[] payload = new byte[length];
+            buf.get(pos + HEADER, payload);
+            if (crc(payload) != buf.getInt(pos + 4)) {
+                System.out.println("⚠️ Job log " + path.getFileName() + " ends in a torn record at offset " + pos + "; ignoring the rest");
+                break;
+            }
+            replay.accept(ByteBuffer.wrap(payload));
+            pos += HEADER + length;
+        }
+        return pos;
+    }
+
+    private static long replaySnapshot(Path path, Consumer<ByteBuffer> replay) throws IOException {
+        long bytes = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return bytes;
+                }
+                int crc = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (crc(payload) != crc) throw new IOException("Corrupt job snapshot " + path);
+                replay.accept(ByteBuffer.wrap(payload));
+                bytes += HEADER + length;
+            }
+        }
+    }
+
+    private long latest(String prefix, String suffix) throws IOException {
+        List<Long> seqs = sequences(prefix, suffix);
+        return seqs.isEmpty() ? -1 : seqs.get(seqs.size() - 1);
+    }
+
+    private List<Long> sequences(String prefix, String suffix) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                seqs.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+            }
+        }
+        seqs.sort(null);
+        return seqs;
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("wal-%016d.log", seq));
+    }
+
+    private Path snapshotPath(long seq) {
+        return dir.resolve(String.format("snapshot-%016d.dat", seq));
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        final long seq;
+        final MappedByteBuffer buffer;
+        int position;
+        // written by the flusher only
+        int forced;
+
+        Segment(long seq, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.buffer = buffer;
+        }
+    }
+}